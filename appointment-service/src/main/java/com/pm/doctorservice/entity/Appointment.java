@@ -12,7 +12,7 @@ import java.util.UUID;
 @Table(name = "appointment")
 public class Appointment {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TimeOrderedUuid
     @Column(name = "id")
     private UUID uuid;
 
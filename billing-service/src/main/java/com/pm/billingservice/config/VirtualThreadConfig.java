@@ -0,0 +1,34 @@
+package com.pm.billingservice.config;
+
+import net.devh.boot.grpc.server.serverfactory.GrpcServerConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Extra wiring for the virtual thread execution mode ({@code spring.threads.virtual.enabled=true}).
+ * <p>
+ * Spring Boot already moves Tomcat request handling and the {@code @KafkaListener}
+ * containers to virtual threads. This runs the gRPC service calls on virtual threads
+ * as well.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+    // not a bean, an Executor bean would replace Boot's applicationTaskExecutor
+    private final ExecutorService grpcExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Bean
+    GrpcServerConfigurer virtualThreadGrpcServerConfigurer() {
+        return serverBuilder -> serverBuilder.executor(grpcExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        grpcExecutor.shutdown();
+    }
+}
@@ -2,6 +2,7 @@ package com.pm.billingservice.kafka;
 
 import billing.events.BillingAccountEvent;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.billingservice.exception.BillingAccountExistsException;
 import com.pm.billingservice.service.BillingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +27,9 @@ public class KafkaConsumer {
                     , billingAccountEvent.getPatientId(), billingAccountEvent.getName(), billingAccountEvent.getEmail());
 
             billingService.createBillingAccount(billingAccountEvent.getPatientId(), billingAccountEvent.getName(), billingAccountEvent.getEmail());
+        } catch (BillingAccountExistsException e) {
+            // patient-service relays a request again when it didn't see the gRPC call succeed
+            log.info("Billing account already exists, nothing to do : {}", e.getMessage());
         } catch (InvalidProtocolBufferException e) {
             log.error("Error parsing billing account event : {} ", e.getMessage());
         }
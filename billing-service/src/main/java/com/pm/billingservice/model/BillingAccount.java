@@ -12,7 +12,7 @@ import java.util.UUID;
 @Table(name = "billing_accounts")
 public class BillingAccount {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TimeOrderedUuid
     private UUID id;
 
     @NotNull
@@ -0,0 +1,149 @@
+package com.pm.doctorservice.cache;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Cache value serializer that writes registered types with a compact, schema-based binary
+ * encoding (protobuf messages mirroring the DTOs) instead of JSON with class names.
+ * <p>
+ * Layout of a value: one header byte, then the body.
+ * <ul>
+ *   <li>header bits 0-6: type tag of a registered codec, 0 for the fallback serializer used for
+ *   every other type;</li>
+ *   <li>header bit 7: the body is LZ4 compressed and starts with the uncompressed length
+ *   (4 bytes, big endian). Bodies of at least {@code compressionThreshold} bytes are
+ *   compressed, unless that doesn't make them smaller.</li>
+ * </ul>
+ * Tags are limited to 1-31 so a header never looks like the start of a JSON document.
+ * Values written by the plain JSON serializer before the switch are recognized by their
+ * first byte and read with the fallback, so existing cache entries stay readable.
+ * <p>
+ * The same class is in patient-service, the services share no library. Keep the two copies
+ * identical apart from the package.
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+    private static final int FALLBACK_TAG = 0;
+    private static final int MAX_TAG = 31;
+    private static final int TAG_MASK = 0x7F;
+    private static final int LZ4_FLAG = 0x80;
+    private static final int LZ4_HEADER_LENGTH = 5;
+
+    private final RedisSerializer<Object> fallback;
+    private final int compressionThreshold;
+    private final Map<Class<?>, Codec<?>> codecsByType = new HashMap<>();
+    private final Codec<?>[] codecsByTag = new Codec<?>[MAX_TAG + 1];
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * @param fallback             serializer for types without a registered codec
+     * @param compressionThreshold body size in bytes from which LZ4 is tried, 0 or less to disable
+     */
+    public CompactRedisSerializer(RedisSerializer<Object> fallback, int compressionThreshold) {
+        this.fallback = fallback;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Registers the binary encoding of {@code type}. Only exact classes match, subclasses go
+     * to the fallback. A tag must never be reused for another type while entries written
+     * with it may still be in Redis.
+     */
+    public <T> CompactRedisSerializer register(int tag, Class<T> type, Function<T, byte[]> encoder, Decoder<T> decoder) {
+        if (tag <= FALLBACK_TAG || tag > MAX_TAG) {
+            throw new IllegalArgumentException("Tag must be between 1 and " + MAX_TAG + " : " + tag);
+        }
+        if (codecsByTag[tag] != null) {
+            throw new IllegalArgumentException("Tag " + tag + " is already used by " + codecsByTag[tag].type().getName());
+        }
+        Codec<T> codec = new Codec<>(tag, type, encoder, decoder);
+        codecsByTag[tag] = codec;
+        codecsByType.put(type, codec);
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+
+        Codec<Object> codec = (Codec<Object>) codecsByType.get(value.getClass());
+        int tag = codec != null ? codec.tag() : FALLBACK_TAG;
+        byte[] body = codec != null ? codec.encoder().apply(value) : fallback.serialize(value);
+
+        if (compressionThreshold > 0 && body.length >= compressionThreshold) {
+            byte[] compressed = new byte[LZ4_HEADER_LENGTH + compressor.maxCompressedLength(body.length)];
+            int length = compressor.compress(body, 0, body.length, compressed, LZ4_HEADER_LENGTH);
+            if (length < body.length) {
+                compressed[0] = (byte) (tag | LZ4_FLAG);
+                compressed[1] = (byte) (body.length >>> 24);
+                compressed[2] = (byte) (body.length >>> 16);
+                compressed[3] = (byte) (body.length >>> 8);
+                compressed[4] = (byte) body.length;
+                return Arrays.copyOf(compressed, LZ4_HEADER_LENGTH + length);
+            }
+        }
+
+        byte[] bytes = new byte[1 + body.length];
+        bytes[0] = (byte) tag;
+        System.arraycopy(body, 0, bytes, 1, body.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        int header = bytes[0] & 0xFF;
+        if (header == '{' || header == '[' || header == '"') {
+            // written by the JSON serializer before this one was configured
+            return fallback.deserialize(bytes);
+        }
+
+        byte[] body = bytes;
+        int offset = 1;
+        int length = bytes.length - 1;
+        if ((header & LZ4_FLAG) != 0) {
+            length = ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+            body = decompressor.decompress(bytes, LZ4_HEADER_LENGTH, length);
+            offset = 0;
+        }
+
+        int tag = header & TAG_MASK;
+        if (tag == FALLBACK_TAG) {
+            return fallback.deserialize(offset == 0 ? body : Arrays.copyOfRange(body, offset, offset + length));
+        }
+        Codec<?> codec = tag <= MAX_TAG ? codecsByTag[tag] : null;
+        if (codec == null) {
+            throw new SerializationException("Unknown cache value type tag " + tag);
+        }
+        try {
+            return codec.decoder().decode(body, offset, length);
+        } catch (IOException e) {
+            throw new SerializationException("Could not decode cached " + codec.type().getName(), e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Decoder<T> {
+        T decode(byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    private record Codec<T>(int tag, Class<T> type, Function<T, byte[]> encoder, Decoder<T> decoder) {
+    }
+}
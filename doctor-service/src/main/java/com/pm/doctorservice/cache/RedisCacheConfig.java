@@ -5,6 +5,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pm.doctorservice.dto.DoctorResponseDTO;
+import com.pm.doctorservice.dto.PagedDoctorResponseDto;
+import com.pm.doctorservice.mapper.DoctorProtoMapper;
+import doctor.dto.DoctorResponse;
+import doctor.dto.PagedDoctorResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,6 +19,7 @@ import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
@@ -24,7 +31,8 @@ import java.time.Duration;
  * <p>
  * Key features:
  * - Enables caching functionality via @EnableCaching
- * - Configures JSON serialization for cache values using Jackson
+ * - Serializes the cached DTOs as protobuf, optionally LZ4 compressed, see
+ *   {@link CompactRedisSerializer}; other values as JSON using Jackson
  * - Handles Java 8 date/time types
  * - Includes type information in serialized JSON for proper deserialization
  * - Sets 60 minute TTL for cache entries
@@ -35,24 +43,14 @@ import java.time.Duration;
 public class RedisCacheConfig {
 
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory factory) {
-        // Creates a new ObjectMapper instance for JSON serialization/deserialization
-        ObjectMapper objectMapper = new ObjectMapper();
-        // Registers JavaTimeModule to handle Java 8 date/time types
-        objectMapper.registerModule(new JavaTimeModule());
-        // Configures dates to be serialized as ISO-8601 strings instead of timestamps
-        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        // Enables type information to be included in serialized JSON
-        // This is needed for proper deserialization of complex objects
-        // Uses NON_FINAL typing meaning all non-final types will include type info
-        //  is included as a property in the JSON
-        objectMapper.activateDefaultTyping(
-                LaissezFaireSubTypeValidator.instance,
-                ObjectMapper.DefaultTyping.NON_FINAL,
-                JsonTypeInfo.As.PROPERTY
-        );
-// Creates a Redis serializer that uses Jackson for JSON conversion with our configured ObjectMapper
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+    public RedisCacheManager cacheManager(
+            RedisConnectionFactory factory,
+            @Value("${doctor.cache.codec:compact}") String codec,
+            @Value("${doctor.cache.codec.compression-threshold:1024}") int compressionThreshold) {
+        // "compact" stores the DTOs as protobuf, "json" keeps the typed JSON of earlier versions
+        RedisSerializer<Object> serializer = "json".equalsIgnoreCase(codec)
+                ? jsonSerializer()
+                : compactSerializer(compressionThreshold);
 
         // Creates the Redis cache configuration:
         RedisCacheConfiguration cacheConfiguration = RedisCacheConfiguration.defaultCacheConfig()
@@ -63,7 +61,7 @@ public class RedisCacheConfig {
                 // Configures how cache keys are serialized - using simple string serialization
                 .serializeKeysWith(RedisSerializationContext.
                         SerializationPair.fromSerializer(new StringRedisSerializer()))
-                // Configures how cache values are serialized - using our JSON serializer
+                // Configures how cache values are serialized
                 .serializeValuesWith(RedisSerializationContext.
                         SerializationPair.fromSerializer(serializer));
 
@@ -73,4 +71,43 @@ public class RedisCacheConfig {
                 .cacheDefaults(cacheConfiguration)
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Typed JSON serializer for cache values. Every nested object carries its class name,
+     * which makes it work for any value but costs space and parse time.
+     */
+    static GenericJackson2JsonRedisSerializer jsonSerializer() {
+        // Creates a new ObjectMapper instance for JSON serialization/deserialization
+        ObjectMapper objectMapper = new ObjectMapper();
+        // Registers JavaTimeModule to handle Java 8 date/time types
+        objectMapper.registerModule(new JavaTimeModule());
+        // Configures dates to be serialized as ISO-8601 strings instead of timestamps
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // Enables type information to be included in serialized JSON
+        // This is needed for proper deserialization of complex objects
+        // Uses NON_FINAL typing meaning all non-final types will include type info
+        //  is included as a property in the JSON
+        objectMapper.activateDefaultTyping(
+                LaissezFaireSubTypeValidator.instance,
+                ObjectMapper.DefaultTyping.NON_FINAL,
+                JsonTypeInfo.As.PROPERTY
+        );
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
+    }
+
+    /**
+     * Binary serializer for the cached DTOs, JSON for anything else.
+     * Tags are persisted in Redis: never change or reuse one, add new types with new tags.
+     */
+    static CompactRedisSerializer compactSerializer(int compressionThreshold) {
+        return new CompactRedisSerializer(jsonSerializer(), compressionThreshold)
+                .register(1, DoctorResponseDTO.class,
+                        dto -> DoctorProtoMapper.toProto(dto).toByteArray(),
+                        (bytes, offset, length) -> DoctorProtoMapper.fromProto(
+                                DoctorResponse.parser().parseFrom(bytes, offset, length)))
+                .register(2, PagedDoctorResponseDto.class,
+                        dto -> DoctorProtoMapper.toProto(dto).toByteArray(),
+                        (bytes, offset, length) -> DoctorProtoMapper.fromProto(
+                                PagedDoctorResponse.parser().parseFrom(bytes, offset, length)));
+    }
+}
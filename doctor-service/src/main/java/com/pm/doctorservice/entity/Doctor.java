@@ -10,7 +10,7 @@ import java.util.UUID;
 @Table(name = "doctor")
 public class Doctor {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TimeOrderedUuid
     @Column(name = "id")
     private UUID uuid;
 
@@ -0,0 +1,66 @@
+package com.pm.doctorservice.mapper;
+
+import com.pm.doctorservice.dto.DoctorResponseDTO;
+import com.pm.doctorservice.dto.PagedDoctorResponseDto;
+import doctor.dto.DoctorResponse;
+import doctor.dto.PagedDoctorResponse;
+
+/**
+ * Maps the response DTOs to and from their protobuf mirrors in {@code doctor_dto.proto}.
+ */
+public class DoctorProtoMapper {
+
+    public static DoctorResponse toProto(DoctorResponseDTO dto) {
+        DoctorResponse.Builder builder = DoctorResponse.newBuilder()
+                .setYearOfExperience(dto.getYearOfExperience());
+        if (dto.getId() != null) {
+            builder.setId(dto.getId());
+        }
+        if (dto.getName() != null) {
+            builder.setName(dto.getName());
+        }
+        if (dto.getEmail() != null) {
+            builder.setEmail(dto.getEmail());
+        }
+        if (dto.getMobile() != null) {
+            builder.setMobile(dto.getMobile());
+        }
+        if (dto.getSpeciality() != null) {
+            builder.setSpeciality(dto.getSpeciality());
+        }
+        return builder.build();
+    }
+
+    public static DoctorResponseDTO fromProto(DoctorResponse message) {
+        DoctorResponseDTO dto = new DoctorResponseDTO();
+        dto.setId(message.hasId() ? message.getId() : null);
+        dto.setName(message.hasName() ? message.getName() : null);
+        dto.setEmail(message.hasEmail() ? message.getEmail() : null);
+        dto.setMobile(message.hasMobile() ? message.getMobile() : null);
+        dto.setSpeciality(message.hasSpeciality() ? message.getSpeciality() : null);
+        dto.setYearOfExperience(message.getYearOfExperience());
+        return dto;
+    }
+
+    public static PagedDoctorResponse toProto(PagedDoctorResponseDto dto) {
+        PagedDoctorResponse.Builder builder = PagedDoctorResponse.newBuilder()
+                .setTotalPages(dto.getTotalPages())
+                .setTotalElements(dto.getTotalElements())
+                .setPageNumber(dto.getPageNumber())
+                .setPageSize(dto.getPageSize());
+        if (dto.getDoctors() != null) {
+            dto.getDoctors().forEach(doctor -> builder.addDoctors(toProto(doctor)));
+        }
+        return builder.build();
+    }
+
+    public static PagedDoctorResponseDto fromProto(PagedDoctorResponse message) {
+        return PagedDoctorResponseDto.builder()
+                .doctors(message.getDoctorsList().stream().map(DoctorProtoMapper::fromProto).toList())
+                .totalPages(message.getTotalPages())
+                .totalElements(message.getTotalElements())
+                .pageNumber(message.getPageNumber())
+                .pageSize(message.getPageSize())
+                .build();
+    }
+}
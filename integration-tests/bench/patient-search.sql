@@ -0,0 +1,88 @@
+-- Benchmark: patient substring search, derived LIKE queries vs the pg_trgm path.
+--
+-- Builds a scratch copy of the patient table in its own schema, fills it with synthetic
+-- rows and times both query shapes with EXPLAIN ANALYZE. Run it once per data size:
+--
+--   psql -h localhost -p 5000 -U admin -d db -v rows=1000000  -f integration-tests/bench/patient-search.sql
+--   psql -h localhost -p 5000 -U admin -d db -v rows=10000000 -f integration-tests/bench/patient-search.sql
+--
+-- Compare "Execution Time" and the plan nodes (Seq Scan vs Bitmap Index Scan) of each pair.
+
+\timing on
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DROP SCHEMA IF EXISTS patient_bench CASCADE;
+CREATE SCHEMA patient_bench;
+
+CREATE TABLE patient_bench.patient
+(
+    id              UUID PRIMARY KEY,
+    name            VARCHAR(255)        NOT NULL,
+    email           VARCHAR(255) UNIQUE NOT NULL,
+    address         VARCHAR(255)        NOT NULL,
+    date_of_birth   DATE                NOT NULL,
+    registered_date DATE                NOT NULL
+);
+
+INSERT INTO patient_bench.patient (id, name, email, address, date_of_birth, registered_date)
+SELECT gen_random_uuid(),
+       (ARRAY ['John','Jane','Alice','Bob','Emma','Liam','Olivia','Noah','Ava','Mia'])[1 + i % 10]
+           || ' ' || (ARRAY ['Smith','Johnson','Brown','Taylor','Wilson','Davies','Evans','Walker','White','Green'])[1 + (i / 10) % 10]
+           || ' ' || md5(i::text)::varchar(6),
+       'patient' || i || '@example.com',
+       (i % 9999) || ' ' || (ARRAY ['Main','Elm','Oak','Pine','Maple','Cedar','Willow','Birch'])[1 + i % 8]
+           || ' St, ' || (ARRAY ['Springfield','Shelbyville','Capital City','Ogdenville'])[1 + i % 4],
+       DATE '1940-01-01' + (i % 25000),
+       DATE '2015-01-01' + (i % 3000)
+FROM generate_series(1, :rows) AS s(i);
+
+-- what the application creates in data.sql
+CREATE INDEX ON patient_bench.patient (name, id);
+CREATE INDEX ON patient_bench.patient USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX ON patient_bench.patient USING gin (lower(email) gin_trgm_ops);
+ANALYZE patient_bench.patient;
+
+-- 1. LIKE path: what findByNameContainingIgnoreCase(..., PageRequest.of(0, 10, Sort.by("name"))) runs
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM patient_bench.patient p
+WHERE upper(p.name) LIKE upper('%walker 3b%') ESCAPE '\'
+ORDER BY p.name ASC
+LIMIT 10;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT count(p.id) FROM patient_bench.patient p
+WHERE upper(p.name) LIKE upper('%walker 3b%') ESCAPE '\';
+
+-- 2. trigram path: PatientRepository.search(NAME, "walker 3b", NAME, ASC, page 0 / size 10)
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM patient_bench.patient p
+WHERE lower(p.name) LIKE '%walker 3b%' ESCAPE '\'
+ORDER BY p.name ASC, p.id ASC
+LIMIT 10;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT count(*) FROM patient_bench.patient p
+WHERE lower(p.name) LIKE '%walker 3b%' ESCAPE '\';
+
+-- 3. trigram path ranked by relevance (sortField=relevance)
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM patient_bench.patient p
+WHERE lower(p.name) LIKE '%walker 3b%' ESCAPE '\'
+ORDER BY similarity(lower(p.name), 'walker 3b') DESC, p.id
+LIMIT 10;
+
+-- 4. selective email search, the front desk's most common lookup
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM patient_bench.patient p
+WHERE upper(p.email) LIKE upper('%patient987654@%') ESCAPE '\'
+ORDER BY p.name ASC
+LIMIT 10;
+
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT p.* FROM patient_bench.patient p
+WHERE lower(p.email) LIKE '%patient987654@%' ESCAPE '\'
+ORDER BY p.name ASC, p.id ASC
+LIMIT 10;
+
+DROP SCHEMA patient_bench CASCADE;
@@ -0,0 +1,45 @@
+-- Compares random (v4) with time-ordered (v7) UUID primary keys on insert time and index size.
+--
+--   psql -h localhost -U admin_user -d db -f integration-tests/bench/uuid-primary-keys.sql
+--
+-- ROWS (default 10 000 000) can be overridden with -v rows=1000000. Random keys land all over
+-- the primary key index, so once it outgrows shared_buffers most inserts read and dirty a page
+-- of their own; time-ordered keys always append to the rightmost leaf. Compare the
+-- "Time:" of both INSERTs and the index sizes printed at the end.
+
+\set ON_ERROR_STOP on
+\if :{?rows}
+\else
+    \set rows 10000000
+\endif
+
+-- same layout as TimeOrderedUuidGenerator: 48 bit epoch millis, version 7, variant 10, random
+CREATE OR REPLACE FUNCTION bench_uuid_v7() RETURNS uuid AS $$
+    SELECT encode(
+        set_bit(set_bit(
+            overlay(uuid_send(gen_random_uuid())
+                    PLACING substring(int8send(floor(extract(epoch FROM clock_timestamp()) * 1000)::bigint) FROM 3)
+                    FROM 1 FOR 6),
+            52, 1), 53, 1),
+        'hex')::uuid;
+$$ LANGUAGE sql VOLATILE;
+
+DROP TABLE IF EXISTS bench_uuid_v4;
+DROP TABLE IF EXISTS bench_uuid_v7;
+CREATE TABLE bench_uuid_v4 (id uuid PRIMARY KEY, payload text NOT NULL);
+CREATE TABLE bench_uuid_v7 (id uuid PRIMARY KEY, payload text NOT NULL);
+
+\timing on
+INSERT INTO bench_uuid_v4 SELECT gen_random_uuid(), md5(i::text) FROM generate_series(1, :rows) i;
+INSERT INTO bench_uuid_v7 SELECT bench_uuid_v7(), md5(i::text) FROM generate_series(1, :rows) i;
+\timing off
+
+SELECT c.relname AS index,
+       pg_size_pretty(pg_relation_size(c.oid)) AS size
+FROM pg_class c
+WHERE c.relname IN ('bench_uuid_v4_pkey', 'bench_uuid_v7_pkey')
+ORDER BY c.relname;
+
+DROP TABLE bench_uuid_v4;
+DROP TABLE bench_uuid_v7;
+DROP FUNCTION bench_uuid_v7();
@@ -0,0 +1,65 @@
+// Load test comparing platform threads with the virtual thread execution mode.
+//
+// Run it twice against the same stack, once per mode, and compare the "http_reqs" rate
+// and the p(99) of "http_req_duration" per endpoint tag:
+//
+//   SPRING_THREADS_VIRTUAL_ENABLED=false docker compose up -d
+//   k6 run --summary-trend-stats "avg,p(50),p(95),p(99)" integration-tests/load/virtual-threads.js
+//   SPRING_THREADS_VIRTUAL_ENABLED=true docker compose up -d
+//   k6 run --summary-trend-stats "avg,p(50),p(95),p(99)" integration-tests/load/virtual-threads.js
+//
+// BASE_URL (default http://localhost:4004, the api-gateway) and VUS (default 400) can be
+// overridden with -e. The gap shows once VUS is well above Tomcat's 200 worker threads.
+
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:4004';
+const VUS = parseInt(__ENV.VUS || '400');
+
+export const options = {
+    scenarios: {
+        mixed: {
+            executor: 'ramping-vus',
+            startVUs: 0,
+            stages: [
+                { duration: '30s', target: VUS },
+                { duration: '2m', target: VUS },
+                { duration: '15s', target: 0 },
+            ],
+        },
+    },
+};
+
+export function setup() {
+    const login = http.post(`${BASE_URL}/api/auth/login`,
+        JSON.stringify({ email: 'testuser@test.com', password: 'password123' }),
+        { headers: { 'Content-Type': 'application/json' } });
+    return { token: login.json('token') };
+}
+
+export default function (data) {
+    const headers = { Authorization: `Bearer ${data.token}`, 'Content-Type': 'application/json' };
+    const roll = Math.random();
+
+    if (roll < 0.7) {
+        const page = 1 + Math.floor(Math.random() * 50);
+        const res = http.get(`${BASE_URL}/api/patients?page=${page}&size=20`, { headers, tags: { endpoint: 'list' } });
+        check(res, { 'list 200': (r) => r.status === 200 });
+    } else if (roll < 0.9) {
+        const res = http.post(`${BASE_URL}/api/auth/login`,
+            JSON.stringify({ email: 'testuser@test.com', password: 'password123' }),
+            { headers: { 'Content-Type': 'application/json' }, tags: { endpoint: 'login' } });
+        check(res, { 'login 200': (r) => r.status === 200 });
+    } else {
+        const id = `${__VU}-${__ITER}-${Date.now()}`;
+        const res = http.post(`${BASE_URL}/api/patients`, JSON.stringify({
+            name: `Load ${id}`,
+            email: `load-${id}@example.com`,
+            address: '1 Load Test Way',
+            dateOfBirth: '1990-01-01',
+            registrationDate: '2024-01-01',
+        }), { headers, tags: { endpoint: 'create' } });
+        check(res, { 'create 201/200': (r) => r.status === 201 || r.status === 200 });
+    }
+}
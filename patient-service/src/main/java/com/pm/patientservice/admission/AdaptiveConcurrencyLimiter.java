@@ -0,0 +1,160 @@
+package com.pm.patientservice.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to latency, after the gradient algorithm of Netflix's
+ * concurrency-limits.
+ * <p>
+ * Every completed request is a latency sample. A long-term average of the samples is the
+ * latency of the service when it isn't overloaded; a sample well above it means requests
+ * are queueing somewhere behind the limiter (connection pool, billing call, CPU), so the
+ * limit shrinks by the ratio of the two, at most by half. While samples stay near the
+ * average the limit grows by its square root, which leaves room for a small queue. When
+ * the in-flight count is under half the limit, the samples say nothing about a higher
+ * limit and the limit is left as is. The limit stays within {@code [minLimit, maxLimit]}.
+ * <p>
+ * A request arriving at the limit waits up to {@code queueWait} for a slot, and is
+ * rejected after that; with a zero wait it is rejected at once.
+ * <p>
+ * Metrics, tagged with the limiter's {@code class}: {@code patient.admission.limit},
+ * {@code patient.admission.in_flight}, {@code patient.admission.queued} (requests that had
+ * to wait) and {@code patient.admission.rejected}.
+ */
+public class AdaptiveConcurrencyLimiter {
+    // samples may be this much slower than the long-term average before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+    // weight of a sample in the long-term average, about the last 600 samples
+    private static final double LONG_RTT_ALPHA = 2.0 / 601;
+    // weight of a new limit against the current one
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long queueWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    // guarded by lock
+    private int inFlight;
+    private double longRttNanos;
+    private volatile double limit;
+
+    private final Counter queued;
+    private final Counter rejected;
+
+    public AdaptiveConcurrencyLimiter(String name,
+                                      int initialLimit,
+                                      int minLimit,
+                                      int maxLimit,
+                                      Duration queueWait,
+                                      MeterRegistry meterRegistry) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits of " + name + " must satisfy 1 <= min <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.queueWaitNanos = queueWait.toNanos();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        Gauge.builder("patient.admission.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current concurrency limit")
+                .tag("class", name)
+                .register(meterRegistry);
+        Gauge.builder("patient.admission.in_flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Requests admitted and not yet completed")
+                .tag("class", name)
+                .register(meterRegistry);
+        this.queued = Counter.builder("patient.admission.queued")
+                .description("Requests that waited for a slot")
+                .tag("class", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("patient.admission.rejected")
+                .description("Requests refused at the concurrency limit")
+                .tag("class", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes a slot, waiting up to the queue wait if none is free. A taken slot must be
+     * given back with {@link #release}.
+     *
+     * @return false if the request is rejected
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            if (queueWaitNanos > 0) {
+                queued.increment();
+                long remaining = queueWaitNanos;
+                while (remaining > 0) {
+                    remaining = released.awaitNanos(remaining);
+                    if (inFlight < (int) limit) {
+                        inFlight++;
+                        return true;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Gives back a slot and feeds the request's latency to the limit.
+     */
+    public void release(long elapsedNanos) {
+        lock.lock();
+        try {
+            update(elapsedNanos, inFlight);
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rttNanos, int inFlightAtSample) {
+        double rtt = Math.max(1, rttNanos);
+        longRttNanos = longRttNanos == 0 ? rtt : longRttNanos + (rtt - longRttNanos) * LONG_RTT_ALPHA;
+        if (longRttNanos / rtt > 2) {
+            // samples are much faster than the average, an overload has passed: catch up sooner
+            longRttNanos *= 0.95;
+        }
+        double current = limit;
+        if (inFlightAtSample < current / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / rtt));
+        double next = current * gradient + Math.sqrt(current);
+        next = current * (1 - SMOOTHING) + next * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
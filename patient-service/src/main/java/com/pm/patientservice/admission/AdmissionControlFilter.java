@@ -0,0 +1,77 @@
+package com.pm.patientservice.admission;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Admission control of the patient API: each request takes a slot of the write or the read
+ * {@link AdaptiveConcurrencyLimiter} for as long as it runs. Writes are POST, PUT, PATCH
+ * and DELETE, except {@code POST /patients/batch-get}, which only reads. With separate
+ * limits a write spike holding connections and billing calls can't starve the reads.
+ * <p>
+ * A request that finds no slot gets a 503 with {@code Retry-After} right away, instead of
+ * piling up on a Tomcat thread. The streaming endpoints ({@code /patients/bulk},
+ * {@code /patients/export}) run for minutes and are not limited here.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private final AdaptiveConcurrencyLimiter writes;
+    private final AdaptiveConcurrencyLimiter reads;
+    private final String retryAfterSeconds;
+
+    public AdmissionControlFilter(AdaptiveConcurrencyLimiter writes,
+                                  AdaptiveConcurrencyLimiter reads,
+                                  Duration retryAfter) {
+        this.writes = writes;
+        this.reads = reads;
+        this.retryAfterSeconds = Long.toString(Math.max(1, retryAfter.toSeconds()));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return path.startsWith("/patients/bulk") || path.startsWith("/patients/export");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean write = isWrite(request);
+        AdaptiveConcurrencyLimiter limiter = write ? writes : reads;
+        if (!limiter.tryAcquire()) {
+            reject(response, write);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            limiter.release(System.nanoTime() - start);
+        }
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        if (HttpMethod.POST.equals(method)) {
+            return !request.getRequestURI().endsWith("/batch-get");
+        }
+        return HttpMethod.PUT.equals(method) || HttpMethod.PATCH.equals(method) || HttpMethod.DELETE.equals(method);
+    }
+
+    private void reject(HttpServletResponse response, boolean write) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Too many concurrent patient " + (write ? "writes" : "reads")
+                + ", retry later\"}");
+    }
+}
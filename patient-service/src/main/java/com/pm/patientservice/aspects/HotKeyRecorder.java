@@ -0,0 +1,36 @@
+package com.pm.patientservice.aspects;
+
+import com.pm.patientservice.cache.HotKeyTracker;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Feeds the cached {@code PatientService} reads that succeeded to the {@link HotKeyTracker},
+ * hits and misses alike. Searches are not cached and not recorded.
+ */
+@Aspect
+@Component
+public class HotKeyRecorder {
+    private final HotKeyTracker hotKeyTracker;
+
+    public HotKeyRecorder(HotKeyTracker hotKeyTracker) {
+        this.hotKeyTracker = hotKeyTracker;
+    }
+
+    @AfterReturning("execution(public * com.pm.patientservice.service.PatientService.getPatientById(java.util.UUID)) && args(id)")
+    public void patientRead(UUID id) {
+        hotKeyTracker.recordPatient(id);
+    }
+
+    @AfterReturning("execution(public * com.pm.patientservice.service.PatientService.getPatients(..)) "
+            + "&& args(page, size, sort, sortField, searchField, searchValue)")
+    public void pageRead(Integer page, Integer size, String sort, String sortField, String searchField, String searchValue) {
+        // same condition as the "patients" cache
+        if ("".equals(searchValue)) {
+            hotKeyTracker.recordPage(page, size, sort, sortField);
+        }
+    }
+}
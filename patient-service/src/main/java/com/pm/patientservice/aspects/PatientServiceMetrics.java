@@ -2,13 +2,26 @@ package com.pm.patientservice.aspects;
 
 
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+/**
+ * Times every public {@code PatientService} method as {@code patient.service.calls}, tagged
+ * with the method, the outcome ({@code success} or {@code error}) and the exception class.
+ * <p>
+ * The aspect runs outside the caching and transaction advice, so a call's time includes its
+ * cache lookup and commit. Cache hits and misses themselves are counted by the caches
+ * ({@code cache.gets}, {@code cache.tier.requests}), repository time by Spring Data
+ * ({@code spring.data.repository.invocations}).
+ */
 @Aspect
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class PatientServiceMetrics {
     private final MeterRegistry  meterRegistry;
 
@@ -17,9 +30,27 @@ public class PatientServiceMetrics {
     }
 
 
-    @Around("execution(* com.pm.patientservice.service.PatientService.getPatients(..))")
-    public Object monitorGetPatients(ProceedingJoinPoint joinPoint) throws Throwable {
-        meterRegistry.counter("custom.redis.cache.miss","cache","patients").increment();
-        return joinPoint.proceed();
+    @Around("execution(public * com.pm.patientservice.service.PatientService.*(..))")
+    public Object monitorPatientService(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = joinPoint.getSignature().getName();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            Object result = joinPoint.proceed();
+            sample.stop(timer(method, "success", "none"));
+            return result;
+        } catch (Throwable e) {
+            sample.stop(timer(method, "error", e.getClass().getSimpleName()));
+            throw e;
+        }
+    }
+
+    private Timer timer(String method, String outcome, String exception) {
+        return Timer.builder("patient.service.calls")
+                .description("PatientService method calls")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .tag("exception", exception)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 }
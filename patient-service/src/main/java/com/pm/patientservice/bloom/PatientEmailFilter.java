@@ -0,0 +1,137 @@
+package com.pm.patientservice.bloom;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * Bloom filter of the emails in the patient table, used to skip the email uniqueness query
+ * for emails that are certainly new.
+ * <p>
+ * The filter is built once the application is ready by streaming the {@code email} column
+ * through a JDBC cursor, and every email written afterwards is added to it. Until the
+ * build finishes, and for emails the filter may contain, callers run the query as before.
+ * A "no" is not fully authoritative, another replica may just have inserted the email, so
+ * the unique constraint on {@code email} stays the final guard.
+ * <p>
+ * Metrics: {@code patient.email.filter.checks} by result ({@code skipped}: the query was
+ * avoided, {@code false_positive}: the filter said maybe and the query found nothing,
+ * {@code true_positive}: the email existed), and the observed false-positive rate
+ * {@code patient.email.filter.false_positive_rate}, false positives over all checks of
+ * new emails.
+ */
+@Component
+public class PatientEmailFilter {
+    private static final Logger log = LoggerFactory.getLogger(PatientEmailFilter.class);
+
+    private final ScalableBloomFilter filter;
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final int fetchSize;
+    private volatile boolean ready;
+
+    private final Counter skipped;
+    private final Counter falsePositives;
+    private final Counter truePositives;
+
+    public PatientEmailFilter(DataSource dataSource,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${patient.email-filter.initial-capacity:1000000}") long initialCapacity,
+                              @Value("${patient.email-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                              @Value("${patient.email-filter.growth:2}") int growth,
+                              @Value("${patient.email-filter.fetch-size:10000}") int fetchSize) {
+        this.filter = new ScalableBloomFilter(initialCapacity, falsePositiveRate, growth);
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.fetchSize = fetchSize;
+
+        this.skipped = checkCounter(meterRegistry, "skipped");
+        this.falsePositives = checkCounter(meterRegistry, "false_positive");
+        this.truePositives = checkCounter(meterRegistry, "true_positive");
+        Gauge.builder("patient.email.filter.false_positive_rate", this, PatientEmailFilter::observedFalsePositiveRate)
+                .register(meterRegistry);
+        Gauge.builder("patient.email.filter.expected_false_positive_rate", filter, ScalableBloomFilter::expectedFalsePositiveRate)
+                .register(meterRegistry);
+        Gauge.builder("patient.email.filter.size", filter, ScalableBloomFilter::approximateSize)
+                .register(meterRegistry);
+        Gauge.builder("patient.email.filter.stages", filter, ScalableBloomFilter::stageCount)
+                .register(meterRegistry);
+    }
+
+    private static Counter checkCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("patient.email.filter.checks")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        Thread.ofVirtual().name("patient-email-filter-build").start(() -> {
+            try {
+                long start = System.nanoTime();
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+                jdbcTemplate.setFetchSize(fetchSize);
+                long[] count = {0};
+                // read-only transaction so the driver streams the rows instead of loading them all
+                transactionTemplate.executeWithoutResult(status ->
+                        jdbcTemplate.query("SELECT email FROM patient", (RowCallbackHandler) rs -> {
+                            filter.put(rs.getString(1));
+                            count[0]++;
+                        }));
+                ready = true;
+                log.info("Patient email filter built with {} emails in {} ms, {} stage(s)",
+                        count[0], (System.nanoTime() - start) / 1_000_000, filter.stageCount());
+            } catch (Exception e) {
+                log.error("Could not build the patient email filter, email checks keep querying the database", e);
+            }
+        });
+    }
+
+    /**
+     * @return false only if no patient has this email (as far as this replica knows),
+     * true if the database has to be asked
+     */
+    public boolean mightExist(String email) {
+        if (!ready || filter.mightContain(email)) {
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+
+    /**
+     * Records the database's answer for an email {@link #mightExist} couldn't rule out.
+     */
+    public void recordChecked(boolean exists) {
+        if (!ready) {
+            return;
+        }
+        (exists ? truePositives : falsePositives).increment();
+    }
+
+    public void put(String email) {
+        if (email != null) {
+            filter.put(email);
+        }
+    }
+
+    private double observedFalsePositiveRate() {
+        double fp = falsePositives.count();
+        double negatives = fp + skipped.count();
+        return negatives == 0 ? 0 : fp / negatives;
+    }
+}
@@ -0,0 +1,111 @@
+package com.pm.patientservice.bloom;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scalable Bloom filter of strings (Almeida et al., "Scalable Bloom Filters").
+ * <p>
+ * A plain Bloom filter is sized up front and its false-positive rate climbs once more
+ * elements than planned are added. This one is a list of stages: elements go into the
+ * newest stage, and when that stage holds its capacity a new one is added with
+ * {@code growth} times the capacity and half the false-positive rate. The rates form a
+ * geometric series, so the overall rate stays below twice the first stage's rate however
+ * far the filter grows.
+ * <p>
+ * Safe for concurrent use: {@link #mightContain} and {@link #put} don't lock, only adding
+ * a stage does.
+ */
+public class ScalableBloomFilter {
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final int growth;
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+    private final ReentrantLock growLock = new ReentrantLock();
+
+    /**
+     * @param initialCapacity elements the first stage holds at its target rate
+     * @param falsePositiveRate target false-positive rate of the first stage
+     * @param growth capacity multiplier of each new stage
+     */
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate, int growth) {
+        this.growth = growth;
+        stages.add(new Stage(Math.max(1, initialCapacity), falsePositiveRate * (1 - TIGHTENING_RATIO)));
+    }
+
+    public boolean mightContain(String value) {
+        for (Stage stage : stages) {
+            if (stage.filter.mightContain(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void put(String value) {
+        Stage stage = stages.get(stages.size() - 1);
+        if (stage.count.get() >= stage.capacity) {
+            stage = grow(stage);
+        }
+        if (stage.filter.put(value)) {
+            stage.count.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the approximate number of distinct elements added
+     */
+    public long approximateSize() {
+        return stages.stream().mapToLong(stage -> stage.filter.approximateElementCount()).sum();
+    }
+
+    public int stageCount() {
+        return stages.size();
+    }
+
+    /**
+     * @return the false-positive rate the filter is expected to have at its current fill
+     */
+    public double expectedFalsePositiveRate() {
+        double allNegative = 1;
+        for (Stage stage : stages) {
+            allNegative *= 1 - stage.filter.expectedFpp();
+        }
+        return 1 - allNegative;
+    }
+
+    private Stage grow(Stage full) {
+        growLock.lock();
+        try {
+            Stage last = stages.get(stages.size() - 1);
+            if (last != full) {
+                // another thread already grew the filter
+                return last;
+            }
+            Stage next = new Stage(full.capacity * growth, full.falsePositiveRate * TIGHTENING_RATIO);
+            stages.add(next);
+            return next;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    private static final class Stage {
+        private final BloomFilter<CharSequence> filter;
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final AtomicLong count = new AtomicLong();
+
+        private Stage(long capacity, double falsePositiveRate) {
+            this.filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), capacity, falsePositiveRate);
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+        }
+    }
+}
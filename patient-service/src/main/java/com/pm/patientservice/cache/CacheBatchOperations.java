@@ -0,0 +1,192 @@
+package com.pm.patientservice.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Multi-key reads and writes on a Redis-backed cache, for callers that need many entries at
+ * once. The caching abstraction only offers single-key operations, one round trip each.
+ * <p>
+ * {@link #getAll} looks the keys up in the near cache (for a {@link TwoTierCache}), then
+ * asks Redis for the rest with a single {@code MGET}, pipelined with a {@code PTTL} per key
+ * so the near cache knows when each copy expires, loads whatever is still missing with
+ * one call to the loader, and writes the loaded values back with one pipeline of
+ * {@code SET ... PX}. Keys, values and TTLs follow the cache's own
+ * {@link RedisCacheConfiguration}, so entries are interchangeable with those written
+ * through the annotations.
+ * <p>
+ * Caches that are not backed by a {@link RedisCache} fall back to per-key reads and writes.
+ */
+public class CacheBatchOperations {
+    private static final Logger log = LoggerFactory.getLogger(CacheBatchOperations.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public CacheBatchOperations(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * @param loader loads the keys missing from the cache, keys it can't find are left out
+     * @return the values found, in the iteration order of {@code keys}, absent keys left out
+     */
+    public <K, V> Map<K, V> getAll(Cache cache, Collection<K> keys, Class<V> type,
+                                   Function<Collection<K>, Map<K, V>> loader) {
+        TwoTierCache nearCache = cache instanceof TwoTierCache twoTierCache ? twoTierCache : null;
+        Cache remoteCache = nearCache != null ? nearCache.getRemoteCache() : cache;
+
+        Map<K, Object> found = new LinkedHashMap<>();
+        List<K> remoteKeys = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            Object value = nearCache != null ? nearCache.getLocal(key) : null;
+            found.put(key, value);
+            if (value == null) {
+                remoteKeys.add(key);
+            }
+        }
+
+        List<K> missing = new ArrayList<>(remoteKeys.size());
+        if (!remoteKeys.isEmpty()) {
+            long[] expiresAt = new long[remoteKeys.size()];
+            Arrays.fill(expiresAt, Long.MAX_VALUE);
+            List<Object> remoteValues = remoteCache instanceof RedisCache redisCache
+                    ? multiGet(redisCache, remoteKeys, expiresAt)
+                    : remoteKeys.stream().map(key -> {
+                        Cache.ValueWrapper wrapper = remoteCache.get(key);
+                        return wrapper != null ? wrapper.get() : null;
+                    }).toList();
+            for (int i = 0; i < remoteKeys.size(); i++) {
+                K key = remoteKeys.get(i);
+                Object value = remoteValues.get(i);
+                if (nearCache != null) {
+                    nearCache.recordRemoteRead(value != null);
+                }
+                if (value == null) {
+                    missing.add(key);
+                    continue;
+                }
+                found.put(key, value);
+                if (nearCache != null) {
+                    nearCache.copyToLocal(key, value, expiresAt[i]);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<K, V> loaded = loader.apply(missing);
+            if (!loaded.isEmpty()) {
+                putAll(remoteCache, nearCache, loaded);
+                found.putAll(loaded);
+            }
+        }
+
+        Map<K, V> result = new LinkedHashMap<>();
+        found.forEach((key, value) -> {
+            if (value != null) {
+                result.put(key, type.cast(value));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @param expiresAt filled with when each key expires in Redis (epoch millis), where it has a TTL
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> multiGet(RedisCache cache, List<?> keys, long[] expiresAt) {
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        byte[][] redisKeys = keys.stream().map(key -> redisKey(cache, key)).toArray(byte[][]::new);
+        // no serializer: the values come back as the stored bytes
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().mGet(redisKeys);
+            for (byte[] redisKey : redisKeys) {
+                connection.keyCommands().pTtl(redisKey);
+            }
+            return null;
+        }, null);
+        List<byte[]> values = !replies.isEmpty() ? (List<byte[]>) replies.get(0) : null;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.size() && i + 1 < replies.size(); i++) {
+            if (replies.get(i + 1) instanceof Long ttl && ttl > 0) {
+                expiresAt[i] = now + ttl;
+            }
+        }
+
+        List<Object> result = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = values != null ? values.get(i) : null;
+            result.add(value != null ? deserialize(configuration, cache.getName(), keys.get(i), value) : null);
+        }
+        return result;
+    }
+
+    private static Object deserialize(RedisCacheConfiguration configuration, String cacheName, Object key, byte[] value) {
+        try {
+            return configuration.getValueSerializationPair().read(ByteBuffer.wrap(value));
+        } catch (RuntimeException e) {
+            // an unreadable entry is a miss, it's overwritten by the reload
+            log.warn("Could not read cached value of {}::{}", cacheName, key, e);
+            return null;
+        }
+    }
+
+    private <K, V> void putAll(Cache remoteCache, TwoTierCache nearCache, Map<K, V> values) {
+        if (!(remoteCache instanceof RedisCache redisCache)) {
+            values.forEach((key, value) -> {
+                remoteCache.put(key, value);
+                if (nearCache != null) {
+                    nearCache.copyToLocal(key, value, Long.MAX_VALUE);
+                }
+            });
+            return;
+        }
+
+        RedisCacheConfiguration configuration = redisCache.getCacheConfiguration();
+        long now = System.currentTimeMillis();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> {
+                Duration ttl = configuration.getTtlFunction().getTimeToLive(key, value);
+                connection.stringCommands().set(
+                        redisKey(redisCache, key),
+                        ByteUtils.getBytes(configuration.getValueSerializationPair().write(value)),
+                        ttl != null && !ttl.isZero() && !ttl.isNegative() ? Expiration.from(ttl) : Expiration.persistent(),
+                        RedisStringCommands.SetOption.upsert());
+            });
+            return null;
+        });
+
+        if (nearCache != null) {
+            // freshly loaded from the source of truth, like a single load nothing needs invalidating
+            values.forEach((key, value) -> {
+                Duration ttl = configuration.getTtlFunction().getTimeToLive(key, value);
+                nearCache.copyToLocal(key, value,
+                        ttl != null && !ttl.isZero() && !ttl.isNegative() ? now + ttl.toMillis() : Long.MAX_VALUE);
+            });
+        }
+    }
+
+    // same key layout as RedisCache: prefix ("name::") + key, through the configured key serializer
+    private static byte[] redisKey(RedisCache cache, Object key) {
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        String cacheKey = configuration.getKeyPrefixFor(cache.getName()) + key;
+        return ByteUtils.getBytes(configuration.getKeySerializationPair().write(cacheKey));
+    }
+}
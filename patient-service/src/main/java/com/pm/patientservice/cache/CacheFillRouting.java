@@ -0,0 +1,59 @@
+package com.pm.patientservice.cache;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the loads that fill the shared caches off the read replicas right after an invalidation.
+ * <p>
+ * A replica may replay the primary's writes up to {@code patient.datasource.replicas.max-lag}
+ * late. An entry evicted, or moved to a new generation, and then reloaded from a lagging
+ * replica would hold the rows from before the write for its whole TTL. So for {@code window}
+ * after any invalidation this replica publishes or receives, the loads run through
+ * {@link #load} read the primary. Other reads, and cache fills outside the window, keep
+ * using the replicas. Without read replicas this changes nothing.
+ */
+public class CacheFillRouting {
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+
+    private final long windowMillis;
+    private volatile long primaryUntil;
+
+    /**
+     * @param window how long after an invalidation cache fills read the primary, at least
+     *               the replicas' max lag plus the interval of the lag check
+     */
+    public CacheFillRouting(Duration window) {
+        this.windowMillis = window.toMillis();
+    }
+
+    /**
+     * Notes a write to a cache, made here or on another replica.
+     */
+    public void invalidated() {
+        primaryUntil = System.currentTimeMillis() + windowMillis;
+    }
+
+    /**
+     * Runs a load whose result goes into a shared cache, on the primary if a cache was
+     * invalidated within the window.
+     */
+    public <T> T load(Supplier<T> loader) {
+        if (System.currentTimeMillis() >= primaryUntil || PRIMARY.get() != null) {
+            return loader.get();
+        }
+        PRIMARY.set(Boolean.TRUE);
+        try {
+            return loader.get();
+        } finally {
+            PRIMARY.remove();
+        }
+    }
+
+    /**
+     * @return whether the current thread is filling a cache and must read the primary
+     */
+    public boolean isPrimaryRequired() {
+        return PRIMARY.get() != null;
+    }
+}
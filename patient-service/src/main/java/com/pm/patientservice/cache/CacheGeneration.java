@@ -0,0 +1,131 @@
+package com.pm.patientservice.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generation counter used to invalidate every entry of a cache in O(1).
+ * <p>
+ * Cache keys embed {@link #current()}; a write calls {@link #bump()}, which atomically
+ * increments the counter in Redis ({@code INCR}) so new reads use fresh keys. Entries of
+ * older generations are never read again and simply expire through the cache TTL, there
+ * is no scan-and-delete.
+ * <p>
+ * The current value is held locally so building a key costs no Redis round trip. Other
+ * replicas learn about a bump through the cache invalidation channel, and every replica
+ * re-reads the counter from Redis at least once per {@code resyncInterval} in case a
+ * pub/sub message was lost.
+ * <p>
+ * The hit rate recovering after writes can be followed with
+ * {@code cache_tier_requests_total{cache="patients",result="hit"}} against the misses.
+ */
+public class CacheGeneration {
+    private static final Logger log = LoggerFactory.getLogger(CacheGeneration.class);
+
+    private final String cacheName;
+    private final String redisKey;
+    private final StringRedisTemplate redisTemplate;
+    private final CacheInvalidationPublisher invalidationPublisher;
+    private final long resyncIntervalNanos;
+
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long lastSyncNanos;
+    private volatile boolean synced;
+
+    private final Counter bumps;
+
+    public CacheGeneration(String cacheName,
+                           StringRedisTemplate redisTemplate,
+                           CacheInvalidationPublisher invalidationPublisher,
+                           Duration resyncInterval,
+                           MeterRegistry meterRegistry) {
+        this.cacheName = cacheName;
+        this.redisKey = cacheName + "::generation";
+        this.redisTemplate = redisTemplate;
+        this.invalidationPublisher = invalidationPublisher;
+        this.resyncIntervalNanos = resyncInterval.toNanos();
+
+        this.bumps = Counter.builder("cache.generation.bumps")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+        Gauge.builder("cache.generation", generation, AtomicLong::get)
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the generation to embed in cache keys.
+     */
+    public long current() {
+        long now = System.nanoTime();
+        if (!synced || now - lastSyncNanos > resyncIntervalNanos) {
+            resync(now);
+        }
+        return generation.get();
+    }
+
+    /**
+     * Moves the cache to a new generation. Inside a transaction the bump is deferred until
+     * after commit, otherwise a concurrent reader could cache the old rows under the new
+     * generation.
+     */
+    public void bump() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doBump();
+                }
+            });
+        } else {
+            doBump();
+        }
+    }
+
+    private void doBump() {
+        bumps.increment();
+        try {
+            Long next = redisTemplate.opsForValue().increment(redisKey);
+            if (next != null) {
+                advanceTo(next);
+                invalidationPublisher.publishGeneration(cacheName, next);
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("{REDIS} Failed to bump generation of cache {}, bumping locally only", cacheName, e);
+        }
+        generation.incrementAndGet();
+    }
+
+    private void resync(long now) {
+        // mark first so concurrent readers don't all go to redis
+        lastSyncNanos = now;
+        try {
+            String value = redisTemplate.opsForValue().get(redisKey);
+            advanceTo(value != null ? Long.parseLong(value) : 0L);
+            synced = true;
+        } catch (Exception e) {
+            log.warn("{REDIS} Failed to read generation of cache {}", cacheName, e);
+        }
+    }
+
+    /**
+     * Generations only move forward, an out of order message can't roll the counter back.
+     */
+    void advanceTo(long value) {
+        generation.accumulateAndGet(value, Math::max);
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+}
@@ -0,0 +1,65 @@
+package com.pm.patientservice.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Applies near-cache invalidations published by other replicas
+ * (see {@link CacheInvalidationPublisher} for the message format), and opens the
+ * {@link CacheFillRouting} window for each of them.
+ */
+public class CacheInvalidationListener implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationListener.class);
+
+    private final TwoTierCacheManager cacheManager;
+    private final Map<String, CacheGeneration> generations;
+    private final String instanceId;
+    private final CacheFillRouting cacheFillRouting;
+
+    public CacheInvalidationListener(TwoTierCacheManager cacheManager,
+                                     Map<String, CacheGeneration> generations,
+                                     String instanceId,
+                                     CacheFillRouting cacheFillRouting) {
+        this.cacheManager = cacheManager;
+        this.generations = generations;
+        this.instanceId = instanceId;
+        this.cacheFillRouting = cacheFillRouting;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split("\\|", 4);
+        if (parts.length != 4) {
+            log.warn("{REDIS} Ignoring malformed cache invalidation message: {}", body);
+            return;
+        }
+        if (instanceId.equals(parts[0])) {
+            return;
+        }
+        cacheFillRouting.invalidated();
+
+        if (CacheInvalidationPublisher.OP_GENERATION.equals(parts[1])) {
+            CacheGeneration generation = generations.get(parts[2]);
+            if (generation != null) {
+                generation.advanceTo(Long.parseLong(parts[3]));
+            }
+            return;
+        }
+
+        TwoTierCache cache = cacheManager.getNearCache(parts[2]);
+        if (cache == null) {
+            return;
+        }
+        if (CacheInvalidationPublisher.OP_CLEAR.equals(parts[1])) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(parts[3]);
+        }
+    }
+}
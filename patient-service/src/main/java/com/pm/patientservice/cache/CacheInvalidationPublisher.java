@@ -0,0 +1,65 @@
+package com.pm.patientservice.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.UUID;
+
+/**
+ * Broadcasts near-cache invalidations to every patient-service replica over Redis pub/sub.
+ * <p>
+ * Message format: {@code <origin>|<op>|<cacheName>|<key>} where op is {@code EVICT},
+ * {@code CLEAR} or {@code GENERATION} (the key then carries the new generation, see
+ * {@link CacheGeneration}). The origin lets a replica ignore its own messages, its L1 has already
+ * been updated in place. Every publish also opens the {@link CacheFillRouting} window here.
+ */
+public class CacheInvalidationPublisher {
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationPublisher.class);
+
+    static final String OP_EVICT = "EVICT";
+    static final String OP_CLEAR = "CLEAR";
+    static final String OP_GENERATION = "GENERATION";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private final CacheFillRouting cacheFillRouting;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public CacheInvalidationPublisher(StringRedisTemplate redisTemplate, String channel,
+                                      CacheFillRouting cacheFillRouting) {
+        this.redisTemplate = redisTemplate;
+        this.channel = channel;
+        this.cacheFillRouting = cacheFillRouting;
+    }
+
+    public void publishEvict(String cacheName, String key) {
+        publish(OP_EVICT, cacheName, key);
+    }
+
+    public void publishClear(String cacheName) {
+        publish(OP_CLEAR, cacheName, "");
+    }
+
+    public void publishGeneration(String cacheName, long generation) {
+        publish(OP_GENERATION, cacheName, Long.toString(generation));
+    }
+
+    private void publish(String op, String cacheName, String key) {
+        cacheFillRouting.invalidated();
+        try {
+            redisTemplate.convertAndSend(channel, instanceId + "|" + op + "|" + cacheName + "|" + key);
+        } catch (Exception e) {
+            // L1 entries are bounded by their TTL, a lost invalidation only delays convergence
+            log.warn("{REDIS} Failed to publish cache invalidation {} for {}::{}", op, cacheName, key, e);
+        }
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,215 @@
+package com.pm.patientservice.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cross-JVM part of the stampede protection of a {@link TwoTierCache}.
+ * <ul>
+ *   <li><b>Load lock</b>: on a Redis miss only the replica that takes a short lock
+ *   ({@code SET NX PX}) loads from the database; the others poll Redis for its value and only
+ *   load themselves if the lock holder hasn't written it within {@code lockWait}.</li>
+ *   <li><b>Early refresh</b>: probabilistic early expiration (XFetch). A read at time
+ *   {@code now} of an entry expiring in Redis at {@code expiry} triggers a background reload when
+ *   {@code now - delta * beta * ln(random) >= expiry}, where {@code delta} is the average load
+ *   time. The closer to expiry, the likelier; the more often a key is read, the earlier one
+ *   read triggers, so hot keys are reloaded before they expire while cold ones just expire.</li>
+ * </ul>
+ * The early refresh needs the Redis expiry of every L1 entry, so values copied from Redis
+ * are read together with their TTL, in one round trip ({@link #read}).
+ * <p>
+ * Lock waits and early refreshes are counted per cache, as are the loads coalesced inside
+ * one JVM by {@link TwoTierCache} itself.
+ */
+public class CacheStampedeGuard {
+    private static final Logger log = LoggerFactory.getLogger(CacheStampedeGuard.class);
+
+    // deletes the lock only if it still holds our token, an expired lock may have been re-taken
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    private static final long LOCK_POLL_MILLIS = 20;
+
+    private final String cacheName;
+    private final StringRedisTemplate redisTemplate;
+    private final Duration lockTtl;
+    private final Duration lockWait;
+    private final double beta;
+
+    // exponentially weighted average of the load time, the XFetch delta
+    private final AtomicLong averageLoadNanos = new AtomicLong();
+
+    private final Counter coalesced;
+    private final Counter lockWaitHits;
+    private final Counter lockWaitTimeouts;
+    private final Counter earlyRefreshes;
+
+    public CacheStampedeGuard(String cacheName,
+                              StringRedisTemplate redisTemplate,
+                              Duration lockTtl,
+                              Duration lockWait,
+                              double beta,
+                              MeterRegistry meterRegistry) {
+        this.cacheName = cacheName;
+        this.redisTemplate = redisTemplate;
+        this.lockTtl = lockTtl;
+        this.lockWait = lockWait;
+        this.beta = beta;
+
+        this.coalesced = Counter.builder("cache.stampede.coalesced")
+                .description("Loads that waited for a load of the same key already running in this JVM")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+        this.lockWaitHits = lockWaitCounter(meterRegistry, "hit");
+        this.lockWaitTimeouts = lockWaitCounter(meterRegistry, "timeout");
+        this.earlyRefreshes = Counter.builder("cache.refresh.early")
+                .description("Entries reloaded in the background before they expired")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+    }
+
+    private Counter lockWaitCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("cache.stampede.lock.waits")
+                .description("Redis misses that waited for another replica's load")
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the lock token, or null if another replica holds the lock
+     */
+    String tryLock(String key) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(lockKey(key), token, lockTtl);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    void unlock(String key, String token) {
+        try {
+            redisTemplate.execute(UNLOCK_SCRIPT, List.of(lockKey(key)), token);
+        } catch (Exception e) {
+            // the lock expires on its own
+            log.warn("Could not release cache load lock for {}::{}", cacheName, key, e);
+        }
+    }
+
+    /**
+     * Polls {@code remoteValue} until another replica's load shows up or {@code lockWait} passes.
+     *
+     * @return the value, or null if the caller should load it itself
+     */
+    <T> T awaitRemoteLoad(Supplier<T> remoteValue) {
+        long deadline = System.nanoTime() + lockWait.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(LOCK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            T value = remoteValue.get();
+            if (value != null) {
+                lockWaitHits.increment();
+                return value;
+            }
+        }
+        lockWaitTimeouts.increment();
+        return null;
+    }
+
+    /**
+     * Reads the entry of {@code key} from {@code cache} with a pipelined {@code GET} and
+     * {@code PTTL}, keys and values as the cache itself writes them.
+     *
+     * @return the value and when it expires, or null on a miss
+     */
+    RemoteEntry read(RedisCache cache, Object key) {
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        byte[] redisKey = ByteUtils.getBytes(configuration.getKeySerializationPair()
+                .write(configuration.getKeyPrefixFor(cache.getName()) + key));
+        // no serializer: the value comes back as the stored bytes
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().get(redisKey);
+            connection.keyCommands().pTtl(redisKey);
+            return null;
+        }, null);
+        if (results.size() < 2 || !(results.get(0) instanceof byte[] bytes)) {
+            return null;
+        }
+        Object value = configuration.getValueSerializationPair().read(ByteBuffer.wrap(bytes));
+        if (value == null) {
+            return null;
+        }
+        long ttl = results.get(1) instanceof Long millis ? millis : -1;
+        return new RemoteEntry(value, ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE);
+    }
+
+    /**
+     * @return when the Redis entry of {@code key} expires (epoch millis), {@link Long#MAX_VALUE}
+     * if it has no TTL or the TTL can't be read
+     */
+    long remoteExpiresAt(String key) {
+        try {
+            Long ttl = redisTemplate.getExpire(cacheName + "::" + key, TimeUnit.MILLISECONDS);
+            return ttl != null && ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE;
+        } catch (Exception e) {
+            log.warn("Could not read TTL of {}::{}", cacheName, key, e);
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * XFetch: whether this read should reload an entry expiring in Redis at {@code expiresAt}.
+     */
+    boolean shouldRefreshEarly(long expiresAt) {
+        long delta = averageLoadNanos.get();
+        if (expiresAt == Long.MAX_VALUE || delta == 0) {
+            return false;
+        }
+        // -ln(u) for u in (0, 1] is exponentially distributed with mean 1
+        double gap = delta / 1_000_000.0 * beta * -Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= expiresAt;
+    }
+
+    void recordLoad(long nanos) {
+        averageLoadNanos.accumulateAndGet(nanos, (average, sample) -> average == 0 ? sample : (average * 7 + sample) / 8);
+    }
+
+    void recordCoalesced() {
+        coalesced.increment();
+    }
+
+    void recordEarlyRefresh() {
+        earlyRefreshes.increment();
+    }
+
+    private String lockKey(String key) {
+        return cacheName + "::lock::" + key;
+    }
+
+    /**
+     * A value read from Redis and when it expires there (epoch millis, {@link Long#MAX_VALUE}
+     * without a TTL).
+     */
+    record RemoteEntry(Object value, long expiresAt) {
+    }
+}
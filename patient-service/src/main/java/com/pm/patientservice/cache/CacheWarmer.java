@@ -0,0 +1,176 @@
+package com.pm.patientservice.cache;
+
+import com.pm.patientservice.dto.PatientBatchGetResponseDTO;
+import com.pm.patientservice.service.PatientService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fills the {@code patientById} and {@code patients} caches with the hot keys persisted by
+ * {@link HotKeyTracker}, at startup.
+ * <p>
+ * This runs as an {@link ApplicationRunner}, and Spring Boot only reports the readiness
+ * state as {@code ACCEPTING_TRAFFIC} once the runners are done, so the instance gets
+ * traffic with warm caches. Patients are loaded in batches of
+ * {@code patient.cache.warmup.batch-size} through the batch-get path (one {@code MGET},
+ * one query for the misses); pages one by one; {@code patient.cache.warmup.parallelism}
+ * tasks at a time. After {@code patient.cache.warmup.timeout} the instance gets ready
+ * anyway: the remaining tasks are cancelled, and a query already running finishes in the
+ * background. The warm-up's reads aren't counted as hot keys, or every restart would
+ * reinforce the list it started from.
+ * <p>
+ * Metrics: {@code patient.cache.warmup.duration}, and per cache
+ * {@code patient.cache.warmup.keys} (hot keys listed) and {@code patient.cache.warmup.coverage}
+ * (share of them now cached).
+ */
+@Component
+@ConditionalOnProperty(name = "patient.cache.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheWarmer implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private final HotKeyTracker hotKeyTracker;
+    private final PatientService patientService;
+    private final int topK;
+    private final int batchSize;
+    private final int parallelism;
+    private final Duration timeout;
+
+    private final AtomicLong durationMillis = new AtomicLong();
+    private final Coverage patientCoverage = new Coverage();
+    private final Coverage pageCoverage = new Coverage();
+
+    public CacheWarmer(HotKeyTracker hotKeyTracker,
+                       PatientService patientService,
+                       MeterRegistry meterRegistry,
+                       @Value("${patient.cache.hot-keys.top-k:1000}") int topK,
+                       @Value("${patient.cache.warmup.batch-size:200}") int batchSize,
+                       @Value("${patient.cache.warmup.parallelism:4}") int parallelism,
+                       @Value("${patient.cache.warmup.timeout:60s}") Duration timeout) {
+        this.hotKeyTracker = hotKeyTracker;
+        this.patientService = patientService;
+        this.topK = topK;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.timeout = timeout;
+
+        TimeGauge.builder("patient.cache.warmup.duration", durationMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Time the startup cache warm-up took")
+                .register(meterRegistry);
+        patientCoverage.register(meterRegistry, HotKeyTracker.PATIENT_BY_ID);
+        pageCoverage.register(meterRegistry, HotKeyTracker.PATIENTS);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        List<String> patientIds;
+        List<String> pages;
+        try {
+            patientIds = hotKeyTracker.hotKeys(HotKeyTracker.PATIENT_BY_ID, topK);
+            pages = hotKeyTracker.hotKeys(HotKeyTracker.PATIENTS, topK);
+        } catch (Exception e) {
+            log.warn("{REDIS} Could not read the hot keys, starting with cold caches", e);
+            return;
+        }
+        patientCoverage.listed.set(patientIds.size());
+        pageCoverage.listed.set(pages.size());
+
+        List<Future<?>> tasks = new ArrayList<>();
+        // not try-with-resources: close() waits for every task, past the timeout
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (int from = 0; from < patientIds.size(); from += batchSize) {
+                List<String> batch = patientIds.subList(from, Math.min(from + batchSize, patientIds.size()));
+                tasks.add(executor.submit(() -> warmPatients(batch)));
+            }
+            for (String page : pages) {
+                tasks.add(executor.submit(() -> warmPage(page)));
+            }
+            awaitAll(tasks, start + timeout.toNanos());
+        } finally {
+            // interrupts what is still running, without waiting for it to stop
+            executor.shutdownNow();
+        }
+
+        durationMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("Cache warm-up done in {} ms: {}/{} patients, {}/{} pages", durationMillis.get(),
+                patientCoverage.cached.get(), patientIds.size(), pageCoverage.cached.get(), pages.size());
+    }
+
+    private void warmPatients(List<String> ids) {
+        try {
+            hotKeyTracker.withoutRecording(() -> {
+                PatientBatchGetResponseDTO result = patientService.getPatientsByIds(ids.stream().map(UUID::fromString).toList());
+                patientCoverage.cached.addAndGet(result.getPatients().size());
+            });
+        } catch (Exception e) {
+            log.warn("Could not warm {} patients", ids.size(), e);
+        }
+    }
+
+    private void warmPage(String page) {
+        try {
+            String[] parts = page.split(":", 4);
+            hotKeyTracker.withoutRecording(() -> patientService.getPatients(
+                    Integer.valueOf(parts[0]), Integer.valueOf(parts[1]), parts[2], parts[3], "name", ""));
+            pageCoverage.cached.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("Could not warm page {}", page, e);
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> tasks, long deadline) {
+        for (Future<?> task : tasks) {
+            try {
+                task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Cache warm-up timed out, starting with partly warm caches");
+                tasks.forEach(remaining -> remaining.cancel(true));
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                tasks.forEach(remaining -> remaining.cancel(true));
+                return;
+            } catch (Exception e) {
+                // the task logs its own failures
+            }
+        }
+    }
+
+    private static final class Coverage {
+        private final AtomicInteger listed = new AtomicInteger();
+        private final AtomicInteger cached = new AtomicInteger();
+
+        private void register(MeterRegistry meterRegistry, String cacheName) {
+            Gauge.builder("patient.cache.warmup.keys", listed, AtomicInteger::get)
+                    .description("Hot keys listed for the startup warm-up")
+                    .tag("cache", cacheName)
+                    .register(meterRegistry);
+            Gauge.builder("patient.cache.warmup.coverage", this,
+                            coverage -> coverage.listed.get() == 0 ? 0 : (double) coverage.cached.get() / coverage.listed.get())
+                    .description("Share of the hot keys cached by the startup warm-up")
+                    .tag("cache", cacheName)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.pm.patientservice.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Approximate top-K of the most frequent keys: a count-min sketch estimates the count of
+ * every key, and the {@code k} keys with the highest estimates are kept.
+ * <p>
+ * Recording a key costs four atomic increments. A key already in the top-K then only
+ * raises its own count; the lock is taken when a key enters the top-K, and when the
+ * smallest key of the top-K moves, which changes the bar for entering. Keys below that
+ * bar stop after the increments. So the hottest keys, recorded most often, never wait.
+ * <p>
+ * Estimates never undercount. With probability {@code 1 - e^-4} (about 98%) a key's
+ * estimate overcounts by at most {@code e / width} of all the keys recorded.
+ * {@link #decay()} halves every count, so the top-K follows recent traffic.
+ */
+public class HotKeySketch {
+    private static final int DEPTH = 4;
+
+    private final int k;
+    private final int mask;
+    private final AtomicLongArray counts;
+
+    // counts are raised without the lock, entries are added and removed under it
+    private final Map<String, AtomicLong> top = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile String minKey;
+    // smallest estimate in a full top-K, 0 while it isn't full
+    private volatile long topMin;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    public HotKeySketch(int k, int width) {
+        this.k = k;
+        int rowWidth = Integer.highestOneBit(Math.max(2, width) - 1) << 1;
+        this.mask = rowWidth - 1;
+        this.counts = new AtomicLongArray(DEPTH * rowWidth);
+    }
+
+    public void record(String key) {
+        int h1 = spread(key.hashCode());
+        int h2 = spread(h1 ^ 0x5bd1e995) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * (mask + 1) + ((h1 + row * h2) & mask);
+            estimate = Math.min(estimate, counts.incrementAndGet(index));
+        }
+        if (estimate <= topMin) {
+            return;
+        }
+        AtomicLong tracked = top.get(key);
+        if (tracked != null) {
+            tracked.accumulateAndGet(estimate, Math::max);
+            if (!key.equals(minKey)) {
+                return;
+            }
+        }
+        lock.lock();
+        try {
+            tracked = top.get(key);
+            if (tracked != null) {
+                tracked.accumulateAndGet(estimate, Math::max);
+                updateMin();
+                return;
+            }
+            top.put(key, new AtomicLong(estimate));
+            if (top.size() > k && minKey != null) {
+                top.remove(minKey);
+            }
+            updateMin();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the top-K keys and their estimated counts, most frequent first
+     */
+    public List<Map.Entry<String, Long>> top() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(top.size());
+        top.forEach((key, count) -> entries.add(Map.entry(key, count.get())));
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries;
+    }
+
+    /**
+     * Halves every count. Increments running concurrently may be lost, which only makes the
+     * estimates a little lower.
+     */
+    public void decay() {
+        lock.lock();
+        try {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, counts.get(i) >> 1);
+            }
+            top.values().forEach(count -> count.updateAndGet(value -> value >> 1));
+            top.values().removeIf(count -> count.get() == 0);
+            updateMin();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // under the lock
+    private void updateMin() {
+        String smallest = null;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<String, AtomicLong> entry : top.entrySet()) {
+            long count = entry.getValue().get();
+            if (count < min) {
+                min = count;
+                smallest = entry.getKey();
+            }
+        }
+        minKey = smallest;
+        topMin = top.size() >= k ? min : 0;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,117 @@
+package com.pm.patientservice.cache;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the most read patient ids and {@code patients} pages, so a new instance can fill
+ * its caches with them before taking traffic (see {@link CacheWarmer}).
+ * <p>
+ * Reads are counted in a {@link HotKeySketch} per cache, {@code patient.cache.hot-keys.top-k}
+ * keys each. Every {@code patient.cache.hot-keys.persist-interval-ms}, and at shutdown, the
+ * top-K lists replace the sorted sets {@code hotKeys::patientById} and {@code hotKeys::patients}
+ * in Redis, with the estimated counts as scores; the counts are then halved, so the lists
+ * follow the recent traffic. With several instances the last one to write wins, their
+ * lists being much alike.
+ * <p>
+ * A page is recorded as {@code page:size:sort:sortField}. Reads made inside
+ * {@link #withoutRecording}, the warm-up's own, aren't traffic and aren't recorded.
+ */
+@Component
+public class HotKeyTracker {
+    private static final Logger log = LoggerFactory.getLogger(HotKeyTracker.class);
+    static final String PATIENT_BY_ID = "patientById";
+    static final String PATIENTS = "patients";
+    private static final String KEY_PREFIX = "hotKeys::";
+    private static final ThreadLocal<Boolean> SUSPENDED = new ThreadLocal<>();
+
+    private final StringRedisTemplate redisTemplate;
+    private final HotKeySketch patientIds;
+    private final HotKeySketch pages;
+
+    public HotKeyTracker(StringRedisTemplate redisTemplate,
+                         @Value("${patient.cache.hot-keys.top-k:1000}") int topK) {
+        this.redisTemplate = redisTemplate;
+        // about 16 counters per tracked key keeps the overcount small
+        this.patientIds = new HotKeySketch(topK, topK * 16);
+        this.pages = new HotKeySketch(topK, topK * 16);
+    }
+
+    public void recordPatient(UUID id) {
+        if (SUSPENDED.get() == null) {
+            patientIds.record(id.toString());
+        }
+    }
+
+    public void recordPage(int page, int size, String sort, String sortField) {
+        if (SUSPENDED.get() == null) {
+            pages.record(page + ":" + size + ":" + sort + ":" + sortField);
+        }
+    }
+
+    /**
+     * Runs {@code reads} on the current thread without recording them.
+     */
+    public void withoutRecording(Runnable reads) {
+        SUSPENDED.set(Boolean.TRUE);
+        try {
+            reads.run();
+        } finally {
+            SUSPENDED.remove();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${patient.cache.hot-keys.persist-interval-ms:60000}",
+            fixedDelayString = "${patient.cache.hot-keys.persist-interval-ms:60000}")
+    public void persist() {
+        persist(PATIENT_BY_ID, patientIds);
+        persist(PATIENTS, pages);
+    }
+
+    @PreDestroy
+    public void persistOnShutdown() {
+        persist();
+    }
+
+    /**
+     * @return the persisted hot keys of {@code cacheName}, most read first
+     */
+    public List<String> hotKeys(String cacheName, int limit) {
+        Set<String> keys = redisTemplate.opsForZSet().reverseRange(KEY_PREFIX + cacheName, 0, limit - 1);
+        return keys != null ? List.copyOf(keys) : List.of();
+    }
+
+    private void persist(String cacheName, HotKeySketch sketch) {
+        List<Map.Entry<String, Long>> top = sketch.top();
+        if (top.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(top.size() * 2);
+        top.forEach(entry -> tuples.add(new DefaultTypedTuple<>(entry.getKey(), entry.getValue().doubleValue())));
+
+        String key = KEY_PREFIX + cacheName;
+        // written aside and renamed, readers never see a half-written list
+        String staging = key + "::" + UUID.randomUUID();
+        try {
+            redisTemplate.opsForZSet().add(staging, tuples);
+            redisTemplate.rename(staging, key);
+            sketch.decay();
+        } catch (Exception e) {
+            log.warn("{REDIS} Could not persist the hot keys of {}", cacheName, e);
+            redisTemplate.delete(staging);
+        }
+    }
+}
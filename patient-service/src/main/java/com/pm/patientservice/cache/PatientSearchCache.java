@@ -0,0 +1,224 @@
+package com.pm.patientservice.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.pagination.PatientSortField;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * In-process cache for patient search results (GET /patients with a searchValue).
+ * <p>
+ * Two bounded, short-lived Caffeine caches are kept:
+ * <ul>
+ *   <li><b>pages</b>: query fingerprint plus page window to the page that was returned.</li>
+ *   <li><b>candidates</b>: query fingerprint to the complete, ordered list of matches, kept
+ *   only for queries with at most {@code maxCandidates} matches. Any page of the query can
+ *   be cut from it.</li>
+ * </ul>
+ * A fingerprint is the search field, the lowercased search value, the sort field and
+ * direction in their canonical spelling, and the current generation of the "patients" cache. Every patient write moves to a new
+ * generation (see {@link CacheGeneration}), so results cached before the write are
+ * never served again.
+ * <p>
+ * Candidate lists are also reused for longer queries. A patient matching "smit" also
+ * matches "smi", so when "smi" is cached its candidates are filtered in memory to
+ * answer "smit" without a database query. Filtering keeps the order of the list, so
+ * this only applies to explicit sort fields and not to similarity ranking, which
+ * depends on the query.
+ */
+@Component
+public class PatientSearchCache {
+    private static final String SORT_RELEVANCE = "relevance";
+
+    private final CacheGeneration patientsCacheGeneration;
+    private final int maxCandidates;
+
+    private final Cache<PageKey, PagedPatientResponseDto> pages;
+    private final Cache<SearchKey, List<PatientResponseDTO>> candidates;
+
+    private final Counter hits;
+    private final Counter prefixHits;
+    private final Counter misses;
+
+    public PatientSearchCache(CacheGeneration patientsCacheGeneration,
+                              MeterRegistry meterRegistry,
+                              @Value("${patient.search.cache.ttl:60s}") Duration ttl,
+                              @Value("${patient.search.cache.max-pages:5000}") long maxPages,
+                              @Value("${patient.search.cache.max-candidates:500}") int maxCandidates,
+                              @Value("${patient.search.cache.max-candidate-entries:100000}") long maxCandidateEntries) {
+        this.patientsCacheGeneration = patientsCacheGeneration;
+        this.maxCandidates = maxCandidates;
+
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(maxPages)
+                .expireAfterWrite(ttl)
+                .build();
+        // weighed by list length so the bound is on patients held, not on queries
+        this.candidates = Caffeine.newBuilder()
+                .maximumWeight(maxCandidateEntries)
+                .<SearchKey, List<PatientResponseDTO>>weigher((key, list) -> Math.max(1, list.size()))
+                .expireAfterWrite(ttl)
+                .build();
+
+        this.hits = requestCounter(meterRegistry, "hit");
+        this.prefixHits = requestCounter(meterRegistry, "prefix_hit");
+        this.misses = requestCounter(meterRegistry, "miss");
+        Gauge.builder("patient.search.cache.size", pages, Cache::estimatedSize)
+                .tag("cache", "pages")
+                .register(meterRegistry);
+        Gauge.builder("patient.search.cache.size", candidates, Cache::estimatedSize)
+                .tag("cache", "candidates")
+                .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("patient.search.cache.requests")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the normalized fingerprint of a search request.
+     */
+    public SearchKey key(String searchField, String searchValue, String sortField, String sort) {
+        return new SearchKey(
+                searchField.toLowerCase(Locale.ROOT),
+                searchValue.toLowerCase(Locale.ROOT),
+                canonicalSortField(sortField),
+                sort.equalsIgnoreCase("desc") ? "desc" : "asc",
+                patientsCacheGeneration.current());
+    }
+
+    // sort fields are matched without case, so "dateofbirth" and "dateOfBirth" share entries
+    private static String canonicalSortField(String sortField) {
+        if (SORT_RELEVANCE.equalsIgnoreCase(sortField)) {
+            return SORT_RELEVANCE;
+        }
+        try {
+            return PatientSortField.fromAttribute(sortField).getAttribute();
+        } catch (IllegalArgumentException e) {
+            return sortField.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @return the most matches kept for a query, see {@link #put}
+     */
+    public int getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    /**
+     * @param page one-based page number
+     * @return the cached page, or null if it has to be loaded from the database
+     */
+    public PagedPatientResponseDto get(SearchKey key, int page, int size) {
+        PagedPatientResponseDto cached = pages.getIfPresent(new PageKey(key, page, size));
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        List<PatientResponseDTO> matches = candidates.getIfPresent(key);
+        if (matches != null) {
+            hits.increment();
+            return toPage(matches, page, size);
+        }
+
+        matches = fromShorterQuery(key);
+        if (matches != null) {
+            prefixHits.increment();
+            candidates.put(key, matches);
+            return toPage(matches, page, size);
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches a page loaded from the database, and the complete, ordered match list of the
+     * query when it was loaded as well. {@code allMatches} is null otherwise, and is only
+     * kept if the query has no more than {@code maxCandidates} matches.
+     */
+    public void put(SearchKey key, int page, int size, PagedPatientResponseDto result,
+                    List<PatientResponseDTO> allMatches) {
+        pages.put(new PageKey(key, page, size), result);
+
+        if (allMatches != null && allMatches.size() <= maxCandidates) {
+            candidates.put(key, allMatches);
+        }
+    }
+
+    private List<PatientResponseDTO> fromShorterQuery(SearchKey key) {
+        if (SORT_RELEVANCE.equalsIgnoreCase(key.sortField())) {
+            return null;
+        }
+        Function<PatientResponseDTO, String> field = switch (key.searchField()) {
+            case "name" -> PatientResponseDTO::getName;
+            case "address" -> PatientResponseDTO::getAddress;
+            case "email" -> PatientResponseDTO::getEmail;
+            default -> null;
+        };
+        if (field == null) {
+            return null;
+        }
+
+        for (int length = key.searchValue().length() - 1; length > 0; length--) {
+            List<PatientResponseDTO> shorter = candidates.getIfPresent(key.withSearchValue(key.searchValue().substring(0, length)));
+            if (shorter != null) {
+                return shorter.stream()
+                        .filter(patient -> {
+                            String value = field.apply(patient);
+                            return value != null && value.toLowerCase(Locale.ROOT).contains(key.searchValue());
+                        })
+                        .toList();
+            }
+        }
+        return null;
+    }
+
+    private static PagedPatientResponseDto toPage(List<PatientResponseDTO> matches, int page, int size) {
+        return toPage(matches, matches.size(), page, size);
+    }
+
+    /**
+     * Cuts a page out of the first matches of a query.
+     *
+     * @param matches       the first matches, in order, covering at least the page
+     * @param totalElements the number of matches of the query
+     * @param page          one-based page number
+     */
+    public static PagedPatientResponseDto toPage(List<PatientResponseDTO> matches, long totalElements,
+                                                 int page, int size) {
+        int from = (int) Math.min((long) (page - 1) * size, matches.size());
+        int to = Math.min(from + size, matches.size());
+        return PagedPatientResponseDto.builder()
+                .patients(matches.subList(from, to))
+                .totalPages((int) ((totalElements + size - 1) / size))
+                .totalElements((int) totalElements)
+                .pageNumber(page)
+                .pageSize(size)
+                .build();
+    }
+
+    public record SearchKey(String searchField, String searchValue, String sortField, String sort, long generation) {
+        SearchKey withSearchValue(String value) {
+            return new SearchKey(searchField, value, sortField, sort, generation);
+        }
+    }
+
+    private record PageKey(SearchKey searchKey, int page, int size) {
+    }
+}
@@ -0,0 +1,118 @@
+package com.pm.patientservice.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Current {@code @Version} of each patient, kept in Redis under {@code patientVersion::<id>}
+ * so a conditional GET can be answered without loading or serializing the patient.
+ * <p>
+ * Only writers set the value, after their transaction commits; readers fill in a missing
+ * value with {@code SET NX}, so a reader holding an older copy never overwrites a newer
+ * version. A write also deletes the value right away, so a version that fails to reach
+ * Redis after commit is simply absent, and an unknown version sends the request through
+ * the full read path. Values expire after {@code patient.cache.version.ttl}, which bounds
+ * how long a value survives a write whose delete failed as well.
+ */
+@Component
+public class PatientVersionCache {
+    private static final Logger log = LoggerFactory.getLogger(PatientVersionCache.class);
+    private static final String KEY_PREFIX = "patientVersion::";
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public PatientVersionCache(StringRedisTemplate redisTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${patient.cache.version.ttl:60m}") Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+        this.hits = requestCounter(meterRegistry, "hit");
+        this.misses = requestCounter(meterRegistry, "miss");
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("cache.tier.requests")
+                .tag("cache", "patientVersion")
+                .tag("tier", "l2")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the cached version, or null if unknown
+     */
+    public Long get(String id) {
+        try {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + id);
+            (value != null ? hits : misses).increment();
+            return value != null ? Long.valueOf(value) : null;
+        } catch (Exception e) {
+            log.warn("{REDIS} Failed to read version of patient {}", id, e);
+            return null;
+        }
+    }
+
+    /**
+     * Records the version a reader has seen, unless a version is already cached.
+     */
+    public void putIfAbsent(String id, Long version) {
+        if (version == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + id, version.toString(), ttl);
+        } catch (Exception e) {
+            log.warn("{REDIS} Failed to cache version of patient {}", id, e);
+        }
+    }
+
+    /**
+     * Records a write. The old version is dropped at once, the new one is set when the
+     * transaction commits ({@code version} null for a delete).
+     */
+    public void written(String id, Long version) {
+        delete(id);
+        if (version == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    set(id, version);
+                }
+            });
+        } else {
+            set(id, version);
+        }
+    }
+
+    private void set(String id, long version) {
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + id, Long.toString(version), ttl);
+        } catch (Exception e) {
+            log.warn("{REDIS} Failed to cache version of patient {}", id, e);
+        }
+    }
+
+    private void delete(String id) {
+        try {
+            redisTemplate.delete(KEY_PREFIX + id);
+        } catch (Exception e) {
+            log.warn("{REDIS} Failed to drop version of patient {}", id, e);
+        }
+    }
+}
@@ -5,17 +5,32 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.mapper.PatientProtoMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import patient.dto.PagedPatientResponse;
+import patient.dto.PatientResponse;
 
 import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
 
 /**
  * Configuration class for Redis caching in the application.
@@ -24,35 +39,32 @@ import java.time.Duration;
  * <p>
  * Key features:
  * - Enables caching functionality via @EnableCaching
- * - Configures JSON serialization for cache values using Jackson
+ * - Serializes the cached DTOs as protobuf, optionally LZ4 compressed, see
+ *   {@link CompactRedisSerializer}; other values as JSON using Jackson
  * - Handles Java 8 date/time types
  * - Includes type information in serialized JSON for proper deserialization
  * - Sets 10 minute TTL for cache entries
+ * - Records cache statistics, which actuator exports per cache on /actuator/prometheus
  * - Uses string serialization for cache keys
+ * - Puts an in-process near cache (L1) in front of Redis (L2) for the hot caches,
+ *   kept coherent across replicas through Redis pub/sub invalidation
+ * - Invalidates the paginated "patients" cache by bumping a generation counter
+ *   that is part of every page key
  */
 @Configuration
 @EnableCaching
 public class RedisCacheConfig {
 
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory factory) {
-        // Creates a new ObjectMapper instance for JSON serialization/deserialization
-        ObjectMapper objectMapper = new ObjectMapper();
-        // Registers JavaTimeModule to handle Java 8 date/time types
-        objectMapper.registerModule(new JavaTimeModule());
-        // Configures dates to be serialized as ISO-8601 strings instead of timestamps
-        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        // Enables type information to be included in serialized JSON
-        // This is needed for proper deserialization of complex objects
-        // Uses NON_FINAL typing meaning all non-final types will include type info
-        //  is included as a property in the JSON
-        objectMapper.activateDefaultTyping(
-                LaissezFaireSubTypeValidator.instance,
-                ObjectMapper.DefaultTyping.NON_FINAL,
-                JsonTypeInfo.As.PROPERTY
-        );
-// Creates a Redis serializer that uses Jackson for JSON conversion with our configured ObjectMapper
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+    public RedisCacheManager redisCacheManager(
+            RedisConnectionFactory factory,
+            @Value("${patient.cache.patients.ttl:10m}") Duration patientsTtl,
+            @Value("${patient.cache.codec:compact}") String codec,
+            @Value("${patient.cache.codec.compression-threshold:1024}") int compressionThreshold) {
+        // "compact" stores the DTOs as protobuf, "json" keeps the typed JSON of earlier versions
+        RedisSerializer<Object> serializer = "json".equalsIgnoreCase(codec)
+                ? jsonSerializer()
+                : compactSerializer(compressionThreshold);
 
         // Creates the Redis cache configuration:
         RedisCacheConfiguration cacheConfiguration = RedisCacheConfiguration.defaultCacheConfig()
@@ -63,7 +75,7 @@ public class RedisCacheConfig {
                 // Configures how cache keys are serialized - using simple string serialization
                 .serializeKeysWith(RedisSerializationContext.
                         SerializationPair.fromSerializer(new StringRedisSerializer()))
-                // Configures how cache values are serialized - using our JSON serializer
+                // Configures how cache values are serialized
                 .serializeValuesWith(RedisSerializationContext.
                         SerializationPair.fromSerializer(serializer));
 
@@ -71,6 +83,134 @@ public class RedisCacheConfig {
         return RedisCacheManager.builder(factory)
                 // Sets the default configuration for all caches
                 .cacheDefaults(cacheConfiguration)
+                // per-cache hit/miss/put/eviction counts, exported as cache.gets, cache.puts, ...
+                .enableStatistics()
+                // caches known at startup are the ones bound to the meter registry
+                .withCacheConfiguration("patientById", cacheConfiguration)
+                // List pages are keyed by generation, old generations are only ever removed by this TTL
+                .withCacheConfiguration("patients", cacheConfiguration.entryTtl(patientsTtl))
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Typed JSON serializer for cache values. Every nested object carries its class name,
+     * which makes it work for any value but costs space and parse time.
+     */
+    static GenericJackson2JsonRedisSerializer jsonSerializer() {
+        // Creates a new ObjectMapper instance for JSON serialization/deserialization
+        ObjectMapper objectMapper = new ObjectMapper();
+        // Registers JavaTimeModule to handle Java 8 date/time types
+        objectMapper.registerModule(new JavaTimeModule());
+        // Configures dates to be serialized as ISO-8601 strings instead of timestamps
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // Enables type information to be included in serialized JSON
+        // This is needed for proper deserialization of complex objects
+        // Uses NON_FINAL typing meaning all non-final types will include type info
+        //  is included as a property in the JSON
+        objectMapper.activateDefaultTyping(
+                LaissezFaireSubTypeValidator.instance,
+                ObjectMapper.DefaultTyping.NON_FINAL,
+                JsonTypeInfo.As.PROPERTY
+        );
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
+    }
+
+    /**
+     * Binary serializer for the cached DTOs, JSON for anything else.
+     * Tags are persisted in Redis: never change or reuse one, add new types with new tags.
+     */
+    static CompactRedisSerializer compactSerializer(int compressionThreshold) {
+        return new CompactRedisSerializer(jsonSerializer(), compressionThreshold)
+                .register(1, PatientResponseDTO.class,
+                        dto -> PatientProtoMapper.toProto(dto).toByteArray(),
+                        (bytes, offset, length) -> PatientProtoMapper.fromProto(
+                                PatientResponse.parser().parseFrom(bytes, offset, length)))
+                .register(2, PagedPatientResponseDto.class,
+                        dto -> PatientProtoMapper.toProto(dto).toByteArray(),
+                        (bytes, offset, length) -> PatientProtoMapper.fromProto(
+                                PagedPatientResponse.parser().parseFrom(bytes, offset, length)));
+    }
+
+    /**
+     * Sends the cache fills to the primary for as long as a read replica may still miss the
+     * write behind an invalidation: the max lag, plus the lag check that enforces it.
+     */
+    @Bean
+    public CacheFillRouting cacheFillRouting(
+            @Value("${patient.datasource.replicas.max-lag:5s}") Duration maxLag,
+            @Value("${patient.datasource.replicas.lag-check-interval-ms:1000}") long lagCheckIntervalMillis) {
+        return new CacheFillRouting(maxLag.plusMillis(lagCheckIntervalMillis));
+    }
+
+    @Bean
+    public CacheInvalidationPublisher cacheInvalidationPublisher(
+            StringRedisTemplate redisTemplate,
+            @Value("${patient.cache.invalidation.channel:patient-service:cache-invalidation}") String channel,
+            CacheFillRouting cacheFillRouting) {
+        return new CacheInvalidationPublisher(redisTemplate, channel, cacheFillRouting);
+    }
+
+    /**
+     * The cache manager used by the caching annotations. Caches listed in
+     * {@code patient.cache.near.caches} get an L1 near cache, every other cache is served
+     * straight from Redis. Near caches listed in {@code patient.cache.stampede.caches} are
+     * also protected against load stampedes and refreshed ahead of expiry.
+     */
+    @Bean
+    @Primary
+    public TwoTierCacheManager cacheManager(
+            RedisCacheManager redisCacheManager,
+            CacheInvalidationPublisher cacheInvalidationPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${patient.cache.near.caches:patientById,patients}") Set<String> nearCacheNames,
+            @Value("${patient.cache.near.max-size:10000}") long maxSize,
+            @Value("${patient.cache.near.ttl:5m}") Duration ttl,
+            StringRedisTemplate redisTemplate,
+            @Value("${patient.cache.stampede.caches:patientById}") Set<String> stampedeProtectedCaches,
+            @Value("${patient.cache.stampede.lock-ttl:3s}") Duration lockTtl,
+            @Value("${patient.cache.stampede.lock-wait:2s}") Duration lockWait,
+            @Value("${patient.cache.refresh-ahead.beta:1.0}") double beta) {
+        return new TwoTierCacheManager(redisCacheManager, nearCacheNames, maxSize, ttl,
+                cacheInvalidationPublisher, meterRegistry, stampedeProtectedCaches,
+                name -> new CacheStampedeGuard(name, redisTemplate, lockTtl, lockWait, beta, meterRegistry),
+                // early refreshes are rare and short, one virtual thread each
+                Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean
+    public CacheBatchOperations cacheBatchOperations(StringRedisTemplate redisTemplate) {
+        return new CacheBatchOperations(redisTemplate);
+    }
+
+    /**
+     * Generation embedded in the keys of the paginated "patients" cache. Patient writes bump
+     * it instead of evicting every cached page.
+     */
+    @Bean
+    public CacheGeneration patientsCacheGeneration(
+            StringRedisTemplate redisTemplate,
+            CacheInvalidationPublisher cacheInvalidationPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${patient.cache.generation.resync-interval:5s}") Duration resyncInterval) {
+        return new CacheGeneration("patients", redisTemplate, cacheInvalidationPublisher,
+                resyncInterval, meterRegistry);
+    }
+
+    // Subscribes to the invalidation channel so writes on other replicas evict our L1
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(
+            RedisConnectionFactory factory,
+            TwoTierCacheManager cacheManager,
+            CacheGeneration patientsCacheGeneration,
+            CacheInvalidationPublisher cacheInvalidationPublisher,
+            CacheFillRouting cacheFillRouting) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.addMessageListener(
+                new CacheInvalidationListener(cacheManager,
+                        Map.of(patientsCacheGeneration.getCacheName(), patientsCacheGeneration),
+                        cacheInvalidationPublisher.getInstanceId(), cacheFillRouting),
+                new ChannelTopic(cacheInvalidationPublisher.getChannel()));
+        return container;
+    }
+}
@@ -0,0 +1,140 @@
+package com.pm.patientservice.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The serialized bodies of cached responses ({@code patient.cache.response-bytes.enabled=true}),
+ * so a cache hit on {@code patientById} or {@code patients} is written out as stored bytes
+ * instead of being serialized again.
+ * <p>
+ * The bodies are keyed by the identity of the response object, held weakly: the near cache
+ * hands out the same instance until the entry is replaced or evicted, and a replaced
+ * entry is a new instance, so a body can't outlive the value it was made from and needs
+ * no invalidation of its own. Responses are never modified once built. A response that
+ * isn't kept anywhere else, a freshly created patient say, leaves with the next GC.
+ * There is one cache per format, each bounded by {@code maxBytes} of bodies.
+ * <p>
+ * JSON bodies are serialized into a buffer from a small pool, so storing one only costs
+ * the copy of the stored body. Buffers grown past {@code maxPooledBufferBytes} are dropped.
+ * <p>
+ * With the mode off, nothing is stored and every buffer is a new one, as before.
+ * <p>
+ * Metrics: {@code http.response.body.cache} counts lookups by {@code format} and
+ * {@code result} ({@code hit}, {@code miss}); {@code http.response.body.cache.size} is the
+ * number of stored bodies per format.
+ */
+public class ResponseBodyCache {
+    private static final int INITIAL_BUFFER_BYTES = 4096;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final int maxPooledBuffers;
+    private final int maxPooledBufferBytes;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Cache<Object, byte[]>> bodies = new ConcurrentHashMap<>();
+    private final Map<String, Counter> hits = new ConcurrentHashMap<>();
+    private final Map<String, Counter> misses = new ConcurrentHashMap<>();
+    private final Queue<ByteArrayOutputStream> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    public ResponseBodyCache(boolean enabled,
+                             long maxBytes,
+                             int maxPooledBuffers,
+                             int maxPooledBufferBytes,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.maxPooledBufferBytes = maxPooledBufferBytes;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the stored body of {@code response} in {@code format}, or null
+     */
+    public byte[] get(String format, Object response) {
+        if (!enabled) {
+            return null;
+        }
+        byte[] body = bodies(format).getIfPresent(response);
+        if (body != null) {
+            hits.computeIfAbsent(format, key -> lookupCounter(key, "hit")).increment();
+        } else {
+            misses.computeIfAbsent(format, key -> lookupCounter(key, "miss")).increment();
+        }
+        return body;
+    }
+
+    public void put(String format, Object response, byte[] body) {
+        if (enabled) {
+            bodies(format).put(response, body);
+        }
+    }
+
+    /**
+     * @return an empty buffer, to be given back with {@link #release}
+     */
+    public ByteArrayOutputStream borrowBuffer() {
+        if (enabled) {
+            ByteArrayOutputStream buffer = buffers.poll();
+            if (buffer != null) {
+                pooledBuffers.decrementAndGet();
+                return buffer;
+            }
+        }
+        return new ByteArrayOutputStream(INITIAL_BUFFER_BYTES);
+    }
+
+    public void release(ByteArrayOutputStream buffer) {
+        if (!enabled || buffer.size() > maxPooledBufferBytes) {
+            return;
+        }
+        if (pooledBuffers.incrementAndGet() > maxPooledBuffers) {
+            pooledBuffers.decrementAndGet();
+            return;
+        }
+        buffer.reset();
+        buffers.offer(buffer);
+    }
+
+    private Cache<Object, byte[]> bodies(String format) {
+        return bodies.computeIfAbsent(format, this::createBodies);
+    }
+
+    private Cache<Object, byte[]> createBodies(String format) {
+        Cache<Object, byte[]> cache = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumWeight(maxBytes)
+                .weigher((Object response, byte[] body) -> body.length)
+                .build();
+        Gauge.builder("http.response.body.cache.size", cache, Cache::estimatedSize)
+                .description("Serialized response bodies kept for cached responses")
+                .tag("format", format)
+                .register(meterRegistry);
+        return cache;
+    }
+
+    private Counter lookupCounter(String format, String result) {
+        return Counter.builder("http.response.body.cache")
+                .description("Lookups of the serialized body of a response")
+                .tag("format", format)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,394 @@
+package com.pm.patientservice.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link Cache} that keeps a bounded in-process near cache (L1, Caffeine) in front of
+ * the shared Redis cache (L2).
+ * <p>
+ * Reads are served from L1 when possible and only fall through to Redis on an L1 miss,
+ * which also saves the Jackson deserialization of the cached value. Values read from
+ * Redis are copied into L1.
+ * <p>
+ * Writes and evictions go to both tiers and are broadcast through the
+ * {@link CacheInvalidationPublisher} so the other replicas drop their L1 copy.
+ * <p>
+ * Loads through {@link #get(Object, Callable)} (caching annotations with {@code sync = true})
+ * are protected against stampedes when the cache has a {@link CacheStampedeGuard}:
+ * concurrent misses of one key in this JVM share a single load, the replicas coordinate
+ * through a short Redis lock, and hot entries are reloaded in the background shortly
+ * before they expire in Redis. Every L1 entry of such a cache knows its Redis expiry:
+ * a write computes it from the configured TTL, a copy from Redis reads it along with the
+ * value.
+ * <p>
+ * Hits and misses are counted per tier as {@code cache.tier.requests}.
+ */
+public class TwoTierCache implements Cache {
+    private static final Logger log = LoggerFactory.getLogger(TwoTierCache.class);
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, CachedValue> localCache;
+    private final Cache remoteCache;
+    private final CacheInvalidationPublisher invalidationPublisher;
+    private final CacheStampedeGuard stampedeGuard;
+    private final Executor refreshExecutor;
+
+    // loads running in this JVM, by local key
+    private final Map<String, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+
+    public TwoTierCache(String name,
+                        com.github.benmanes.caffeine.cache.Cache<String, CachedValue> localCache,
+                        Cache remoteCache,
+                        CacheInvalidationPublisher invalidationPublisher,
+                        CacheStampedeGuard stampedeGuard,
+                        Executor refreshExecutor,
+                        MeterRegistry meterRegistry) {
+        this.name = name;
+        this.localCache = localCache;
+        this.remoteCache = remoteCache;
+        this.invalidationPublisher = invalidationPublisher;
+        this.stampedeGuard = stampedeGuard;
+        this.refreshExecutor = refreshExecutor;
+
+        this.localHits = requestCounter(meterRegistry, "l1", "hit");
+        this.localMisses = requestCounter(meterRegistry, "l1", "miss");
+        this.remoteHits = requestCounter(meterRegistry, "l2", "hit");
+        this.remoteMisses = requestCounter(meterRegistry, "l2", "miss");
+
+        Gauge.builder("cache.tier.size", localCache, c -> c.estimatedSize())
+                .tag("cache", name)
+                .tag("tier", "l1")
+                .register(meterRegistry);
+    }
+
+    private Counter requestCounter(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("cache.tier.requests")
+                .tag("cache", name)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remoteCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        CachedValue cached = localCache.getIfPresent(localKey);
+        if (cached != null) {
+            localHits.increment();
+            return new SimpleValueWrapper(cached.value());
+        }
+        localMisses.increment();
+
+        Object value = getRemote(key, localKey);
+        return value != null ? new SimpleValueWrapper(value) : null;
+    }
+
+    // reads L2 and copies a hit into L1
+    private Object getRemote(Object key, String localKey) {
+        CacheStampedeGuard.RemoteEntry entry = readRemote(key);
+        if (entry == null) {
+            remoteMisses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        putLocal(localKey, entry.value(), entry.expiresAt());
+        return entry.value();
+    }
+
+    // with a guard, the Redis expiry comes in the same round trip as the value
+    private CacheStampedeGuard.RemoteEntry readRemote(Object key) {
+        if (stampedeGuard != null && remoteCache instanceof RedisCache redisCache) {
+            return stampedeGuard.read(redisCache, key);
+        }
+        ValueWrapper wrapper = remoteCache.get(key);
+        return wrapper != null && wrapper.get() != null
+                ? new CacheStampedeGuard.RemoteEntry(wrapper.get(), Long.MAX_VALUE)
+                : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        CachedValue cached = localCache.getIfPresent(localKey);
+        if (cached != null) {
+            localHits.increment();
+            if (stampedeGuard != null && stampedeGuard.shouldRefreshEarly(cached.remoteExpiresAt())) {
+                refreshInBackground(key, localKey, cached, valueLoader);
+            }
+            return (T) cached.value();
+        }
+        localMisses.increment();
+
+        if (stampedeGuard == null) {
+            Object value = getRemote(key, localKey);
+            return value != null ? (T) value : load(key, localKey, valueLoader);
+        }
+
+        // single flight: the first miss loads, concurrent misses of the same key wait for it
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> running = loads.putIfAbsent(localKey, load);
+        if (running != null) {
+            stampedeGuard.recordCoalesced();
+            return (T) await(running, key, valueLoader);
+        }
+        try {
+            Object value = getRemote(key, localKey);
+            if (value == null) {
+                value = loadWithLock(key, localKey, valueLoader);
+            }
+            load.complete(value);
+            return (T) value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(localKey, load);
+        }
+    }
+
+    // a Redis miss: load under the cross-replica lock, or wait for the replica holding it
+    private Object loadWithLock(Object key, String localKey, Callable<?> valueLoader) {
+        String token = stampedeGuard.tryLock(localKey);
+        if (token == null) {
+            CacheStampedeGuard.RemoteEntry entry = stampedeGuard.awaitRemoteLoad(() -> readRemote(key));
+            if (entry != null) {
+                putLocal(localKey, entry.value(), entry.expiresAt());
+                return entry.value();
+            }
+        }
+        try {
+            return load(key, localKey, valueLoader);
+        } finally {
+            if (token != null) {
+                stampedeGuard.unlock(localKey, token);
+            }
+        }
+    }
+
+    private <T> T load(Object key, String localKey, Callable<T> valueLoader) {
+        T value;
+        long start = System.nanoTime();
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        if (stampedeGuard != null) {
+            stampedeGuard.recordLoad(System.nanoTime() - start);
+        }
+        if (value != null) {
+            // freshly loaded from the source of truth, no other replica can hold a newer copy
+            remoteCache.put(key, value);
+            putLocal(localKey, value, writtenExpiresAt(key, value));
+        }
+        return value;
+    }
+
+    private static Object await(CompletableFuture<Object> load, Object key, Callable<?> valueLoader) {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    /**
+     * Reloads an entry that is about to expire in Redis, at most once at a time per key and
+     * across replicas. If another replica already refreshed it, only the L1 copy is renewed.
+     */
+    private void refreshInBackground(Object key, String localKey, CachedValue cached, Callable<?> valueLoader) {
+        if (!refreshing.add(localKey)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    CacheStampedeGuard.RemoteEntry entry = readRemote(key);
+                    if (entry != null && entry.expiresAt() != Long.MAX_VALUE
+                            && entry.expiresAt() > cached.remoteExpiresAt() + 1000) {
+                        putLocal(localKey, entry.value(), entry.expiresAt());
+                        return;
+                    }
+                    String token = stampedeGuard.tryLock(localKey);
+                    if (token == null) {
+                        return;
+                    }
+                    try {
+                        load(key, localKey, valueLoader);
+                        stampedeGuard.recordEarlyRefresh();
+                    } finally {
+                        stampedeGuard.unlock(localKey, token);
+                    }
+                } catch (Exception e) {
+                    log.warn("Early refresh of {}::{} failed, it will be loaded on expiry", name, localKey, e);
+                } finally {
+                    refreshing.remove(localKey);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(localKey);
+            log.warn("Could not schedule early refresh of {}::{}", name, localKey, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remoteCache.put(key, value);
+        if (value != null) {
+            putLocal(localKey(key), value, writtenExpiresAt(key, value));
+        }
+        invalidationPublisher.publishEvict(name, localKey(key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remoteCache.putIfAbsent(key, value);
+        Object current = existing != null ? existing.get() : value;
+        if (current != null) {
+            putLocal(localKey(key), current, existing != null ? existingExpiresAt(key) : writtenExpiresAt(key, value));
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remoteCache.evict(key);
+        localCache.invalidate(localKey(key));
+        invalidationPublisher.publishEvict(name, localKey(key));
+    }
+
+    @Override
+    public void clear() {
+        remoteCache.clear();
+        localCache.invalidateAll();
+        invalidationPublisher.publishClear(name);
+    }
+
+    /**
+     * L1 lookup for {@link CacheBatchOperations}, counted like a single read.
+     *
+     * @return the value, or null on a miss
+     */
+    Object getLocal(Object key) {
+        CachedValue cached = localCache.getIfPresent(localKey(key));
+        if (cached == null) {
+            localMisses.increment();
+            return null;
+        }
+        localHits.increment();
+        return cached.value();
+    }
+
+    void recordRemoteRead(boolean hit) {
+        (hit ? remoteHits : remoteMisses).increment();
+    }
+
+    /**
+     * Copies a value read from, or freshly written to, Redis by {@link CacheBatchOperations} into L1.
+     * The caller passes the Redis expiry if it knows it, which saves a TTL lookup per key.
+     */
+    void copyToLocal(Object key, Object value, long remoteExpiresAt) {
+        localCache.put(localKey(key), new CachedValue(value, remoteExpiresAt));
+    }
+
+    Cache getRemoteCache() {
+        return remoteCache;
+    }
+
+    /**
+     * Drops a key from this replica's L1 only. Called when another replica broadcasts a write.
+     */
+    void evictLocal(String key) {
+        localCache.invalidate(key);
+    }
+
+    /**
+     * Drops every entry from this replica's L1 only.
+     */
+    void clearLocal() {
+        localCache.invalidateAll();
+    }
+
+    private void putLocal(String localKey, Object value, long remoteExpiresAt) {
+        localCache.put(localKey, new CachedValue(value, remoteExpiresAt));
+    }
+
+    // the entry was already in Redis, only a TTL lookup tells when it expires
+    private long existingExpiresAt(Object key) {
+        return stampedeGuard != null ? stampedeGuard.remoteExpiresAt(localKey(key)) : Long.MAX_VALUE;
+    }
+
+    // when an entry written now expires in Redis, from the cache's configured TTL like CacheBatchOperations
+    private long writtenExpiresAt(Object key, Object value) {
+        if (stampedeGuard == null || !(remoteCache instanceof RedisCache redisCache)) {
+            return Long.MAX_VALUE;
+        }
+        Duration ttl = redisCache.getCacheConfiguration().getTtlFunction().getTimeToLive(key, value);
+        return ttl != null && !ttl.isZero() && !ttl.isNegative()
+                ? System.currentTimeMillis() + ttl.toMillis()
+                : Long.MAX_VALUE;
+    }
+
+    // L1 is keyed by the string form of the cache key, which is also what goes over pub/sub
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    /**
+     * An L1 entry: the value and when its Redis copy expires (epoch millis, {@link Long#MAX_VALUE}
+     * when not tracked).
+     */
+    record CachedValue(Object value, long remoteExpiresAt) {
+    }
+}
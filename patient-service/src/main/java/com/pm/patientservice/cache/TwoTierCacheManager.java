@@ -0,0 +1,93 @@
+package com.pm.patientservice.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * {@link CacheManager} that decorates the configured caches of the Redis cache manager
+ * with an in-process near cache ({@link TwoTierCache}). Caches that are not listed in
+ * {@code nearCacheNames} are returned as plain Redis caches.
+ * <p>
+ * The near cache is a Caffeine cache (W-TinyLFU eviction) bounded by {@code maxSize}
+ * entries and {@code ttl} after write. The TTL bounds how stale an L1 entry can get if
+ * an invalidation message is lost.
+ * <p>
+ * Caches listed in {@code stampedeProtectedCaches} also get a {@link CacheStampedeGuard}
+ * from {@code stampedeGuards}; their early refreshes run on {@code refreshExecutor}.
+ */
+public class TwoTierCacheManager implements CacheManager {
+    private final CacheManager remoteCacheManager;
+    private final Set<String> nearCacheNames;
+    private final long maxSize;
+    private final Duration ttl;
+    private final CacheInvalidationPublisher invalidationPublisher;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> stampedeProtectedCaches;
+    private final Function<String, CacheStampedeGuard> stampedeGuards;
+    private final Executor refreshExecutor;
+
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public TwoTierCacheManager(CacheManager remoteCacheManager,
+                               Set<String> nearCacheNames,
+                               long maxSize,
+                               Duration ttl,
+                               CacheInvalidationPublisher invalidationPublisher,
+                               MeterRegistry meterRegistry,
+                               Set<String> stampedeProtectedCaches,
+                               Function<String, CacheStampedeGuard> stampedeGuards,
+                               Executor refreshExecutor) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.nearCacheNames = nearCacheNames;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.invalidationPublisher = invalidationPublisher;
+        this.meterRegistry = meterRegistry;
+        this.stampedeProtectedCaches = stampedeProtectedCaches;
+        this.stampedeGuards = stampedeGuards;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    /**
+     * Returns the near cache with the given name if it has already been created on this replica.
+     */
+    public TwoTierCache getNearCache(String name) {
+        return caches.get(name) instanceof TwoTierCache twoTierCache ? twoTierCache : null;
+    }
+
+    private Cache createCache(String name) {
+        Cache remoteCache = remoteCacheManager.getCache(name);
+        if (remoteCache == null || !nearCacheNames.contains(name)) {
+            return remoteCache;
+        }
+
+        com.github.benmanes.caffeine.cache.Cache<String, TwoTierCache.CachedValue> localCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        CacheStampedeGuard stampedeGuard = stampedeProtectedCaches.contains(name) ? stampedeGuards.apply(name) : null;
+
+        return new TwoTierCache(name, localCache, remoteCache, invalidationPublisher,
+                stampedeGuard, refreshExecutor, meterRegistry);
+    }
+}
@@ -0,0 +1,47 @@
+package com.pm.patientservice.config;
+
+import com.pm.patientservice.admission.AdaptiveConcurrencyLimiter;
+import com.pm.patientservice.admission.AdmissionControlFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+
+/**
+ * Adaptive concurrency limits in front of the patient API ({@code patient.admission.enabled=true}),
+ * one for writes and one for reads, see {@link AdmissionControlFilter}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "patient.admission.enabled", havingValue = "true")
+public class AdmissionControlConfig {
+
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilter(
+            MeterRegistry meterRegistry,
+            @Value("${patient.admission.writes.initial-limit:20}") int writesInitialLimit,
+            @Value("${patient.admission.writes.min-limit:4}") int writesMinLimit,
+            @Value("${patient.admission.writes.max-limit:200}") int writesMaxLimit,
+            @Value("${patient.admission.writes.queue-wait:50ms}") Duration writesQueueWait,
+            @Value("${patient.admission.reads.initial-limit:100}") int readsInitialLimit,
+            @Value("${patient.admission.reads.min-limit:10}") int readsMinLimit,
+            @Value("${patient.admission.reads.max-limit:1000}") int readsMaxLimit,
+            @Value("${patient.admission.reads.queue-wait:0ms}") Duration readsQueueWait,
+            @Value("${patient.admission.retry-after:1s}") Duration retryAfter) {
+        AdaptiveConcurrencyLimiter writes = new AdaptiveConcurrencyLimiter("writes",
+                writesInitialLimit, writesMinLimit, writesMaxLimit, writesQueueWait, meterRegistry);
+        AdaptiveConcurrencyLimiter reads = new AdaptiveConcurrencyLimiter("reads",
+                readsInitialLimit, readsMinLimit, readsMaxLimit, readsQueueWait, meterRegistry);
+
+        FilterRegistrationBean<AdmissionControlFilter> registration =
+                new FilterRegistrationBean<>(new AdmissionControlFilter(writes, reads, retryAfter));
+        registration.addUrlPatterns("/patients", "/patients/*");
+        // ahead of everything else, a rejected request should cost next to nothing
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
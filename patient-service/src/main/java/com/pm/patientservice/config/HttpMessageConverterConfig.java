@@ -0,0 +1,60 @@
+package com.pm.patientservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.patientservice.cache.ResponseBodyCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Message converters of the REST API. Spring Boot adds converter beans to its defaults:
+ * the protobuf one goes in front, the measured JSON one replaces the default JSON converter.
+ * Both keep the bodies of cached responses in the {@link ResponseBodyCache}, whose effect
+ * the {@link RequestCostFilter} measures.
+ */
+@Configuration
+public class HttpMessageConverterConfig {
+
+    @Bean
+    public ResponseSerializationMetrics responseSerializationMetrics(MeterRegistry meterRegistry) {
+        return new ResponseSerializationMetrics(meterRegistry);
+    }
+
+    @Bean
+    public ResponseBodyCache responseBodyCache(
+            MeterRegistry meterRegistry,
+            @Value("${patient.cache.response-bytes.enabled:true}") boolean enabled,
+            @Value("${patient.cache.response-bytes.max-size:64MB}") DataSize maxSize,
+            @Value("${patient.cache.response-bytes.pooled-buffers:64}") int pooledBuffers,
+            @Value("${patient.cache.response-bytes.max-pooled-buffer-size:256KB}") DataSize maxPooledBufferSize) {
+        return new ResponseBodyCache(enabled, maxSize.toBytes(), pooledBuffers,
+                (int) maxPooledBufferSize.toBytes(), meterRegistry);
+    }
+
+    @Bean
+    public PatientProtobufHttpMessageConverter patientProtobufHttpMessageConverter(ResponseSerializationMetrics metrics,
+                                                                                   ResponseBodyCache responseBodyCache) {
+        return new PatientProtobufHttpMessageConverter(metrics, responseBodyCache);
+    }
+
+    @Bean
+    public MeasuredJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                                    ResponseSerializationMetrics metrics,
+                                                                                    ResponseBodyCache responseBodyCache) {
+        return new MeasuredJackson2HttpMessageConverter(objectMapper, metrics, responseBodyCache);
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestCostFilter> requestCostFilter(MeterRegistry meterRegistry) {
+        FilterRegistrationBean<RequestCostFilter> registration =
+                new FilterRegistrationBean<>(new RequestCostFilter(meterRegistry));
+        registration.addUrlPatterns("/patients", "/patients/*");
+        // behind admission control, a rejected request isn't a read
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
@@ -0,0 +1,75 @@
+package com.pm.patientservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.patientservice.cache.ResponseBodyCache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * The JSON converter, measuring the bodies that also have a protobuf form the same way
+ * {@link PatientProtobufHttpMessageConverter} does: such a body is serialized into a
+ * buffer first, so neither the time nor the size include the response compression.
+ * The bytes are kept in the {@link ResponseBodyCache}, and a body found there is written
+ * as is.
+ */
+public class MeasuredJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    private static final String FORMAT = "json";
+
+    private final ResponseSerializationMetrics metrics;
+    private final ResponseBodyCache responseBodyCache;
+
+    public MeasuredJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                ResponseSerializationMetrics metrics,
+                                                ResponseBodyCache responseBodyCache) {
+        super(objectMapper);
+        this.metrics = metrics;
+        this.responseBodyCache = responseBodyCache;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (!metrics.isMeasured(object.getClass())) {
+            super.writeInternal(object, type, outputMessage);
+            return;
+        }
+        byte[] body = responseBodyCache.get(FORMAT, object);
+        if (body != null) {
+            RequestCostFilter.markBody(RequestCostFilter.CACHED);
+            outputMessage.getHeaders().setContentLength(body.length);
+            outputMessage.getBody().write(body);
+            return;
+        }
+
+        RequestCostFilter.markBody(RequestCostFilter.SERIALIZED);
+        ByteArrayOutputStream buffer = responseBodyCache.borrowBuffer();
+        try {
+            long start = System.nanoTime();
+            super.writeInternal(object, type, new HttpOutputMessage() {
+                @Override
+                public OutputStream getBody() {
+                    return buffer;
+                }
+
+                @Override
+                public HttpHeaders getHeaders() {
+                    return outputMessage.getHeaders();
+                }
+            });
+            metrics.record(FORMAT, object.getClass(), buffer.size(), System.nanoTime() - start);
+            if (responseBodyCache.isEnabled()) {
+                responseBodyCache.put(FORMAT, object, buffer.toByteArray());
+            }
+
+            outputMessage.getHeaders().setContentLength(buffer.size());
+            buffer.writeTo(outputMessage.getBody());
+        } finally {
+            responseBodyCache.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.pm.patientservice.config;
+
+import com.google.protobuf.Message;
+import com.pm.patientservice.cache.ResponseBodyCache;
+import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.mapper.PatientProtoMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import patient.dto.PagedPatientResponse;
+import patient.dto.PatientResponse;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes {@link PatientResponseDTO} and {@link PagedPatientResponseDto} as
+ * {@code application/x-protobuf}, through their mirrors in {@code patient_dto.proto}.
+ * Clients that link the generated classes parse a page with
+ * {@code PagedPatientResponse.parseFrom(body)}. Written bodies are kept in the
+ * {@link ResponseBodyCache}, like the JSON ones.
+ */
+public class PatientProtobufHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+    public static final String PROTOBUF_VALUE = "application/x-protobuf";
+    public static final MediaType PROTOBUF = MediaType.parseMediaType(PROTOBUF_VALUE);
+    private static final String FORMAT = "protobuf";
+
+    private final ResponseSerializationMetrics metrics;
+    private final ResponseBodyCache responseBodyCache;
+
+    public PatientProtobufHttpMessageConverter(ResponseSerializationMetrics metrics,
+                                               ResponseBodyCache responseBodyCache) {
+        super(PROTOBUF);
+        this.metrics = metrics;
+        this.responseBodyCache = responseBodyCache;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == PatientResponseDTO.class || clazz == PagedPatientResponseDto.class;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        if (clazz == PatientResponseDTO.class) {
+            return PatientProtoMapper.fromProto(PatientResponse.parseFrom(inputMessage.getBody()));
+        }
+        if (clazz == PagedPatientResponseDto.class) {
+            return PatientProtoMapper.fromProto(PagedPatientResponse.parseFrom(inputMessage.getBody()));
+        }
+        throw new HttpMessageNotReadableException("No protobuf form for " + clazz.getName(), inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+        byte[] bytes = responseBodyCache.get(FORMAT, body);
+        if (bytes != null) {
+            RequestCostFilter.markBody(RequestCostFilter.CACHED);
+        } else {
+            RequestCostFilter.markBody(RequestCostFilter.SERIALIZED);
+            long start = System.nanoTime();
+            Message message = body instanceof PatientResponseDTO patient
+                    ? PatientProtoMapper.toProto(patient)
+                    : PatientProtoMapper.toProto((PagedPatientResponseDto) body);
+            bytes = message.toByteArray();
+            metrics.record(FORMAT, body.getClass(), bytes.length, System.nanoTime() - start);
+            responseBodyCache.put(FORMAT, body, bytes);
+        }
+
+        outputMessage.getHeaders().setContentLength(bytes.length);
+        outputMessage.getBody().write(bytes);
+    }
+}
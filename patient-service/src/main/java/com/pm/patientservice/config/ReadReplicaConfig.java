@@ -0,0 +1,90 @@
+package com.pm.patientservice.config;
+
+import com.pm.patientservice.cache.CacheFillRouting;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read replica mode ({@code patient.datasource.replicas.enabled=true}).
+ * <p>
+ * The primary pool is built from the usual {@code spring.datasource.*} properties; one
+ * read-only Hikari pool is added per URL in {@code patient.datasource.replicas.urls}, with
+ * the same {@code spring.datasource.hikari.*} settings. The DataSource used by JPA and
+ * JDBC is a {@link ReplicaRoutingDataSource} over these pools, behind a
+ * {@link LazyConnectionDataSourceProxy}.
+ * <p>
+ * To try it with a single database, point {@code patient.datasource.replicas.urls} at the
+ * primary: reads then take the replica pool and the routing shows in the metrics.
+ */
+@Configuration
+@ConditionalOnProperty(name = "patient.datasource.replicas.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            DataSourceProperties dataSourceProperties,
+            Environment environment,
+            MeterRegistry meterRegistry,
+            CacheFillRouting cacheFillRouting,
+            @Value("${patient.datasource.replicas.urls}") List<String> replicaUrls,
+            @Value("${patient.datasource.replicas.username:${spring.datasource.username:}}") String username,
+            @Value("${patient.datasource.replicas.password:${spring.datasource.password:}}") String password,
+            @Value("${patient.datasource.replicas.read-your-writes-window:2s}") Duration stickyWindow,
+            @Value("${patient.datasource.replicas.max-lag:5s}") Duration maxLag) {
+        HikariDataSource primary = pool(dataSourceProperties.initializeDataSourceBuilder(), environment, meterRegistry,
+                ReplicaRoutingDataSource.PRIMARY);
+
+        List<String> urls = replicaUrls.stream().map(String::trim).filter(url -> !url.isEmpty()).toList();
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            String name = "replica-" + (i + 1);
+            HikariDataSource replica = pool(dataSourceProperties.initializeDataSourceBuilder()
+                    .url(urls.get(i))
+                    .username(username)
+                    .password(password), environment, meterRegistry, name);
+            replica.setReadOnly(true);
+            replicas.put(name, replica);
+        }
+
+        return new ReplicaRoutingDataSource(primary, replicas, stickyWindow, maxLag, cacheFillRouting,
+                meterRegistry);
+    }
+
+    /**
+     * The DataSource of the application: a pool is only picked, and a connection taken from
+     * it, at the first statement of a transaction, when its read-only flag is known.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    private static HikariDataSource pool(DataSourceBuilder<?> builder,
+                                         Environment environment,
+                                         MeterRegistry meterRegistry,
+                                         String name) {
+        HikariDataSource pool = builder.type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        pool.setMetricRegistry(meterRegistry);
+        return pool;
+    }
+}
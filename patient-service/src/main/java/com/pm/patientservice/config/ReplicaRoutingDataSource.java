@@ -0,0 +1,260 @@
+package com.pm.patientservice.config;
+
+import com.pm.patientservice.cache.CacheFillRouting;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes connections between the primary database and its read replicas.
+ * <p>
+ * Work inside a {@code @Transactional(readOnly = true)} transaction goes to a replica,
+ * picked round robin; everything else, including statements outside a transaction, goes
+ * to the primary. This must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, so the target
+ * is chosen at the first statement, once the transaction's read-only flag is known.
+ * <p>
+ * <b>Read-your-writes</b>: when a read-write transaction commits during an HTTP request,
+ * reads go to the primary for {@code stickyWindow}, for the rest of the request and for
+ * later requests of the same client, through a cookie holding the end of the window. The
+ * cookie comes from the client, so a value further out than one window is cut down to it.
+ * A zero window turns this off.
+ * <p>
+ * <b>Cache fills</b>: shortly after a cache invalidation, the loads that refill the
+ * shared caches read the primary, see {@link CacheFillRouting}.
+ * <p>
+ * <b>Lag failover</b>: {@link #checkReplicaLag()} measures every replica's replay lag
+ * every {@code patient.datasource.replicas.lag-check-interval-ms}. A replica that lags
+ * by more than {@code maxLag}, or can't be queried, takes no reads until it catches up.
+ * With no healthy replica left, reads go to the primary.
+ * <p>
+ * Metrics: {@code patient.datasource.routed} counts connections by pool and reason
+ * ({@code write}, {@code read}, {@code sticky}, {@code cache_fill}, {@code replica_lag}).
+ * {@code patient.datasource.replica.lag} and {@code patient.datasource.replica.healthy}
+ * are reported per replica. The pools' own {@code hikaricp.*} metrics carry the pool name.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+    private static final String STICKY_COOKIE = "patient-read-primary-until";
+    private static final String STICKY_ATTRIBUTE = ReplicaRoutingDataSource.class.getName() + ".STICKY_UNTIL";
+    // replay lag in milliseconds, 0 when the replica has replayed everything it received
+    // (and on a primary used as a stand-in, where the functions return null)
+    private static final String LAG_QUERY = "SELECT COALESCE(CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 END, 0)";
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Duration stickyWindow;
+    private final long maxLagMillis;
+    private final CacheFillRouting cacheFillRouting;
+    private final MeterRegistry meterRegistry;
+    // transaction resource key marking a read-write transaction already registered for stickiness
+    private final Object stickinessMarker = new Object();
+
+    public ReplicaRoutingDataSource(DataSource primary,
+                                    Map<String, DataSource> replicaPools,
+                                    Duration stickyWindow,
+                                    Duration maxLag,
+                                    CacheFillRouting cacheFillRouting,
+                                    MeterRegistry meterRegistry) {
+        this.stickyWindow = stickyWindow;
+        this.maxLagMillis = maxLag.toMillis();
+        this.cacheFillRouting = cacheFillRouting;
+        this.meterRegistry = meterRegistry;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicaPools.forEach((name, dataSource) -> {
+            Replica replica = new Replica(name, dataSource);
+            replicas.add(replica);
+            targets.put(name, dataSource);
+            Gauge.builder("patient.datasource.replica.lag", replica, r -> r.lagMillis)
+                    .baseUnit("milliseconds")
+                    .tag("pool", name)
+                    .register(meterRegistry);
+            Gauge.builder("patient.datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .tag("pool", name)
+                    .register(meterRegistry);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        // an unknown key is a bug, don't hide it behind the primary
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            stickOnCommit();
+            return routed(PRIMARY, "write");
+        }
+        if (isSticky()) {
+            return routed(PRIMARY, "sticky");
+        }
+        if (cacheFillRouting.isPrimaryRequired()) {
+            return routed(PRIMARY, "cache_fill");
+        }
+        int size = replicas.size();
+        if (size == 0) {
+            return routed(PRIMARY, "read");
+        }
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return routed(replica.name, "read");
+            }
+        }
+        return routed(PRIMARY, "replica_lag");
+    }
+
+    private String routed(String pool, String reason) {
+        meterRegistry.counter("patient.datasource.routed", "pool", pool, "reason", reason).increment();
+        return pool;
+    }
+
+    @Scheduled(fixedDelayString = "${patient.datasource.replicas.lag-check-interval-ms:1000}")
+    public void checkReplicaLag() {
+        for (Replica replica : replicas) {
+            try {
+                Double lag = replica.jdbcTemplate.queryForObject(LAG_QUERY, Double.class);
+                replica.lagMillis = lag != null ? lag.longValue() : 0;
+                setHealthy(replica, replica.lagMillis <= maxLagMillis);
+            } catch (Exception e) {
+                if (replica.healthy) {
+                    log.warn("Could not read the replication lag of {}", replica.name, e);
+                }
+                setHealthy(replica, false);
+            }
+        }
+    }
+
+    /**
+     * Closes the pools, they aren't beans of their own. Called by Spring as the bean's inferred destroy method.
+     */
+    public void close() {
+        getResolvedDataSources().values().forEach(dataSource -> {
+            try {
+                if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                    dataSource.unwrap(HikariDataSource.class).close();
+                }
+            } catch (SQLException e) {
+                log.warn("Could not close a database pool", e);
+            }
+        });
+    }
+
+    private void setHealthy(Replica replica, boolean healthy) {
+        if (replica.healthy != healthy) {
+            log.info("Replica {} {} (lag {} ms)", replica.name,
+                    healthy ? "takes reads again" : "taken out of the read rotation", replica.lagMillis);
+        }
+        replica.healthy = healthy;
+    }
+
+    // the first connection of a read-write transaction arranges for the stickiness on commit
+    private void stickOnCommit() {
+        if (stickyWindow.isZero() || !TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(stickinessMarker)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(stickinessMarker, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stickToPrimary();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(stickinessMarker);
+            }
+        });
+    }
+
+    private void stickToPrimary() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return;
+        }
+        long until = System.currentTimeMillis() + stickyWindow.toMillis();
+        attributes.setAttribute(STICKY_ATTRIBUTE, until, RequestAttributes.SCOPE_REQUEST);
+
+        HttpServletResponse response = attributes.getResponse();
+        if (response != null && !response.isCommitted()) {
+            Cookie cookie = new Cookie(STICKY_COOKIE, Long.toString(until));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, stickyWindow.toSeconds()));
+            response.addCookie(cookie);
+        }
+    }
+
+    private boolean isSticky() {
+        if (stickyWindow.isZero()
+                || !(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return false;
+        }
+        Object until = attributes.getAttribute(STICKY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (until == null) {
+            until = stickyUntilFromCookie(attributes.getRequest());
+            attributes.setAttribute(STICKY_ATTRIBUTE, until, RequestAttributes.SCOPE_REQUEST);
+        }
+        return (Long) until > System.currentTimeMillis();
+    }
+
+    // the client sends the cookie back, it can't keep its reads on the primary past one window
+    private long stickyUntilFromCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (STICKY_COOKIE.equals(cookie.getName())) {
+                    try {
+                        return Math.min(Long.parseLong(cookie.getValue()),
+                                System.currentTimeMillis() + stickyWindow.toMillis());
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final JdbcTemplate jdbcTemplate;
+        private volatile long lagMillis;
+        // healthy until the first check says otherwise
+        private volatile boolean healthy = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+            this.jdbcTemplate.setQueryTimeout(2);
+        }
+    }
+}
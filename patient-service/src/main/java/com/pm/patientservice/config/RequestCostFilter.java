@@ -0,0 +1,91 @@
+package com.pm.patientservice.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU time and allocation of the patient reads, to compare responses written from a stored
+ * body with serialized ones.
+ * <p>
+ * {@code patient.request.cpu} times the CPU the request thread spent on a {@code GET}, and
+ * {@code patient.request.allocated} records the bytes it allocated, both tagged with
+ * {@code body}: {@code cached} when the converter wrote a stored body, {@code serialized}
+ * when it serialized one, {@code none} for other responses (304, errors, bodies of other
+ * types). Compression and everything else in the request is included for both.
+ * <p>
+ * The JVM only reports these for platform threads; in virtual thread mode nothing is
+ * recorded.
+ */
+public class RequestCostFilter extends OncePerRequestFilter {
+    public static final String CACHED = "cached";
+    public static final String SERIALIZED = "serialized";
+    private static final String BODY_ATTRIBUTE = RequestCostFilter.class.getName() + ".body";
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final MeterRegistry meterRegistry;
+
+    public RequestCostFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Notes how the body of the current request was produced.
+     */
+    public static void markBody(String body) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(BODY_ATTRIBUTE, body, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        long allocatedStart = THREADS.getCurrentThreadAllocatedBytes();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long cpuEnd = THREADS.getCurrentThreadCpuTime();
+            long allocatedEnd = THREADS.getCurrentThreadAllocatedBytes();
+            Object body = request.getAttribute(BODY_ATTRIBUTE);
+            String tag = body != null ? body.toString() : "none";
+            // -1 when unsupported, as for virtual threads
+            if (cpuStart >= 0 && cpuEnd >= 0) {
+                Timer.builder("patient.request.cpu")
+                        .description("CPU time of the request thread for a patient read")
+                        .tag("body", tag)
+                        .register(meterRegistry)
+                        .record(cpuEnd - cpuStart, TimeUnit.NANOSECONDS);
+            }
+            if (allocatedStart >= 0 && allocatedEnd >= 0) {
+                DistributionSummary.builder("patient.request.allocated")
+                        .description("Bytes allocated by the request thread for a patient read")
+                        .baseUnit("bytes")
+                        .tag("body", tag)
+                        .register(meterRegistry)
+                        .record(allocatedEnd - allocatedStart);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.pm.patientservice.config;
+
+import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization cost of the patient response bodies, by format, so JSON and protobuf can
+ * be compared on the same traffic.
+ * <p>
+ * {@code http.response.serialization} times turning the body into bytes and
+ * {@code http.response.payload.size} records the uncompressed size, both tagged with
+ * {@code format} ({@code json}, {@code protobuf}) and {@code type} (the body's class). Bodies
+ * written from the {@link com.pm.patientservice.cache.ResponseBodyCache} aren't serialized and
+ * aren't recorded.
+ */
+public class ResponseSerializationMetrics {
+    private final MeterRegistry meterRegistry;
+
+    public ResponseSerializationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return whether bodies of this class are measured, those that have a protobuf form
+     */
+    public boolean isMeasured(Class<?> type) {
+        return type == PatientResponseDTO.class || type == PagedPatientResponseDto.class;
+    }
+
+    public void record(String format, Class<?> type, int bytes, long elapsedNanos) {
+        Timer.builder("http.response.serialization")
+                .description("Time to serialize a response body")
+                .tag("format", format)
+                .tag("type", type.getSimpleName())
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("http.response.payload.size")
+                .description("Size of a response body before compression")
+                .baseUnit("bytes")
+                .tag("format", format)
+                .tag("type", type.getSimpleName())
+                .register(meterRegistry)
+                .record(bytes);
+    }
+}
@@ -0,0 +1,27 @@
+package com.pm.patientservice.config;
+
+import net.devh.boot.grpc.server.serverfactory.GrpcServerConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Extra wiring for the virtual thread execution mode ({@code spring.threads.virtual.enabled=true}).
+ * <p>
+ * Spring Boot already moves Tomcat request handling, the Kafka listener containers,
+ * {@code @Scheduled} tasks and the application task executor to virtual threads. This
+ * runs the calls of the gRPC server on virtual threads as well. The billing gRPC client
+ * picks up the same property for its channel executor. Requests beyond the Hikari pool
+ * wait in the pool, up to its {@code connectionTimeout}; waiting only parks the virtual thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    GrpcServerConfigurer grpcServerVirtualThreads() {
+        return serverBuilder -> serverBuilder.executor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -1,19 +1,32 @@
 package com.pm.patientservice.controller;
 
+import com.pm.patientservice.config.PatientProtobufHttpMessageConverter;
+import com.pm.patientservice.dto.CursorPagedPatientResponseDto;
 import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientBatchGetRequestDTO;
+import com.pm.patientservice.dto.PatientBatchGetResponseDTO;
 import com.pm.patientservice.dto.PatientRequestDTO;
 import com.pm.patientservice.dto.PatientResponseDTO;
 import com.pm.patientservice.dto.validators.CreatePatientValidationGroup;
+import com.pm.patientservice.idempotency.IdempotencyKeyStore;
+import com.pm.patientservice.service.PatientExportService;
+import com.pm.patientservice.service.PatientImportService;
 import com.pm.patientservice.service.PatientService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.groups.Default;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 
@@ -32,34 +45,157 @@ import java.util.UUID;
 @RequestMapping("/patients")
 @Tag(name = "Patient", description = "API for managing patients")
 public class PatientController {
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    private static final String SORT_RELEVANCE = "relevance";
+    private static final String DEFAULT_SORT_FIELD = "name";
     private final PatientService patientService;
+    private final PatientImportService patientImportService;
+    private final PatientExportService patientExportService;
+    private final IdempotencyKeyStore idempotencyKeyStore;
 
-    public PatientController(PatientService patientService) {
+    // import and export stream for as long as the data takes, unlike the other async requests
+    @Value("${patient.import.timeout:30m}")
+    Duration importTimeout;
+
+    @Value("${patient.export.timeout:30m}")
+    Duration exportTimeout;
+
+    public PatientController(PatientService patientService, PatientImportService patientImportService,
+                             PatientExportService patientExportService, IdempotencyKeyStore idempotencyKeyStore) {
         this.patientService = patientService;
+        this.patientImportService = patientImportService;
+        this.patientExportService = patientExportService;
+        this.idempotencyKeyStore = idempotencyKeyStore;
     }
 
+    /**
+     * Lists a page of patients. The ETag is the version of the whole list, which moves on
+     * every patient write, so an {@code If-None-Match} with the current one is answered
+     * with 304 before the page is read. Sent as JSON or, on {@code Accept: application/x-protobuf},
+     * as a {@code patient.dto.PagedPatientResponse}.
+     */
     @Operation(summary = "Get all patients")
-    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, PatientProtobufHttpMessageConverter.PROTOBUF_VALUE})
     public ResponseEntity<PagedPatientResponseDto> getPatients(
             @RequestParam(defaultValue = "1") Integer page,
             @RequestParam(defaultValue = "10") Integer size,
             @RequestParam(defaultValue = "asc") String sort,
             @RequestParam(defaultValue = "name") String sortField,
             @RequestParam(defaultValue = "name") String searchField,
-            @RequestParam(defaultValue = "") String searchValue
+            @RequestParam(defaultValue = "") String searchValue,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) {
+        // taken before the read, a write during the read makes the next poll fetch again
+        String eTag = listETag(patientService.getPatientsVersion());
+        if (eTagMatches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+        }
+        // relevance only ranks search matches, a plain listing falls back to the default order
+        if (searchValue.isBlank() && SORT_RELEVANCE.equalsIgnoreCase(sortField)) {
+            sortField = DEFAULT_SORT_FIELD;
+        }
         //List<PatientResponseDTO> patients = patientService.getPatients();
         PagedPatientResponseDto patients = patientService.getPatients(page, size, sort, sortField, searchField,searchValue);
-        return ResponseEntity.ok().body(patients);
+        return ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).body(patients);
+    }
+
+    /**
+     * Returns one patient. The ETag is the patient's version; when the version is cached an
+     * {@code If-None-Match} with it is answered with 304 without loading the patient.
+     * Sent as JSON or, on {@code Accept: application/x-protobuf}, as a {@code patient.dto.PatientResponse}.
+     */
+    @Operation(summary = "Get a patient by id")
+    @GetMapping(value = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, PatientProtobufHttpMessageConverter.PROTOBUF_VALUE})
+    public ResponseEntity<PatientResponseDTO> getPatientById(
+            @PathVariable UUID id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Long cachedVersion = ifNoneMatch != null ? patientService.getCachedPatientVersion(id) : null;
+        if (cachedVersion != null && eTagMatches(ifNoneMatch, patientETag(cachedVersion))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(patientETag(cachedVersion))
+                    .varyBy(HttpHeaders.ACCEPT).build();
+        }
+
+        PatientResponseDTO patient = patientService.getPatientById(id);
+        if (patient.getVersion() == null) {
+            // cached before versions existed
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(patient);
+        }
+        if (cachedVersion == null) {
+            patientService.rememberPatientVersion(id, patient.getVersion());
+        }
+        String eTag = patientETag(patient.getVersion());
+        if (eTagMatches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).body(patient);
     }
 
 
+    /**
+     * Lists patients in cursor (keyset) mode. Selected whenever the {@code cursor} parameter is
+     * present; pass it empty for the first page and then the {@code nextCursor} of each response.
+     * Requests without {@code cursor} keep using page/size pagination.
+     */
+    @Operation(summary = "Get patients using cursor pagination")
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE, params = "cursor")
+    public ResponseEntity<CursorPagedPatientResponseDto> getPatientsByCursor(
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "10") Integer size,
+            @RequestParam(defaultValue = "asc") String sort,
+            @RequestParam(defaultValue = "name") String sortField,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        String eTag = listETag(patientService.getPatientsVersion());
+        if (eTagMatches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        CursorPagedPatientResponseDto patients = patientService.getPatientsAfter(cursor, size, sort, sortField, withTotal);
+        return ResponseEntity.ok().eTag(eTag).body(patients);
+    }
+
+    /**
+     * Exports every patient as a stream, NDJSON by default or CSV with {@code format=csv}.
+     * Rows are read from a database cursor and written as they arrive, so the export does
+     * not grow the heap with the size of the table. It may run for up to
+     * {@code patient.export.timeout}.
+     *
+     * @param format    "ndjson" or "csv"
+     * @param fetchSize the number of rows fetched from the database per round trip
+     */
+    @Operation(summary = "Export all patients as NDJSON or CSV")
+    @GetMapping(value = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    public WebAsyncTask<Void> exportPatients(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "${patient.export.fetch-size:1000}") Integer fetchSize,
+            HttpServletResponse response
+    ) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be at least 1");
+        }
+        boolean csv = "csv".equalsIgnoreCase(format);
+        response.setContentType(csv ? TEXT_CSV_VALUE : MediaType.APPLICATION_NDJSON_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=patients." + (csv ? "csv" : "ndjson"));
+        return new WebAsyncTask<>(exportTimeout.toMillis(), () -> {
+            patientExportService.exportPatients(csv, fetchSize, response.getOutputStream());
+            response.flushBuffer();
+            return null;
+        });
+    }
+
     /**
      * Creates a new patient based on the provided patient details.
      *
+     * With an {@code Idempotency-Key} header the patient is created once per key: a retry gets
+     * the patient created by the first request, marked with {@code Idempotent-Replayed: true},
+     * and a retry sent while the first request still runs waits for its outcome.
+     *
      * @param patientRequestDTO the data transfer object containing the details of the patient
      *                          to be created; must be validated based on default and create
      *                          patient validation rules
+     * @param idempotencyKey    optional client-chosen key identifying this creation across retries
      * @return a {@code ResponseEntity} containing a {@code PatientResponseDTO} with the details
      *         of the newly created patient, and an HTTP status of 201 (Created)
      */
@@ -67,10 +203,56 @@ public class PatientController {
     @Operation(summary = "Create a new patient")
     public ResponseEntity<PatientResponseDTO>
     createPatient(@Validated({Default.class, CreatePatientValidationGroup.class})
-                  @RequestBody PatientRequestDTO patientRequestDTO) {
-        PatientResponseDTO patientResponseDTO = patientService.createPatient(patientRequestDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).body(patientResponseDTO);
+                  @RequestBody PatientRequestDTO patientRequestDTO,
+                  @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            PatientResponseDTO patientResponseDTO = patientService.createPatient(patientRequestDTO);
+            return ResponseEntity.status(HttpStatus.CREATED).body(patientResponseDTO);
+        }
+        IdempotencyKeyStore.Outcome outcome = idempotencyKeyStore.createOnce(idempotencyKey, patientRequestDTO,
+                () -> patientService.createPatient(patientRequestDTO));
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header(IDEMPOTENT_REPLAYED, Boolean.toString(outcome.replayed()))
+                .body(outcome.patient());
+    }
+
+    /**
+     * Returns many patients in one call, in the order their ids were requested. Ids without
+     * a patient are listed in {@code notFound}.
+     *
+     * @param request the ids to look up, at most {@code patient.batch-get.max-ids}
+     */
+    @PostMapping(value = "/batch-get", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get many patients by id")
+    public ResponseEntity<PatientBatchGetResponseDTO> getPatientsByIds(
+            @Validated @RequestBody PatientBatchGetRequestDTO request) {
+        return ResponseEntity.ok().body(patientService.getPatientsByIds(request.getIds()));
+    }
 
+    /**
+     * Imports patients in bulk. The body is streamed as NDJSON (one patient request per line)
+     * or CSV with a header row (name,email,address,dateOfBirth,registrationDate), and one
+     * NDJSON status line per row is streamed back while the import runs.
+     *
+     * @param contentType the media type of the upload, NDJSON or CSV
+     * @param body        the uploaded file, read incrementally
+     * @return the import, writing {@code PatientImportResultDTO} lines to the response as it
+     *         runs, for up to {@code patient.import.timeout}
+     */
+    @PostMapping(value = "/bulk",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Import patients in bulk from NDJSON or CSV")
+    public WebAsyncTask<Void> importPatients(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                             InputStream body,
+                                             HttpServletResponse response) {
+        boolean csv = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE));
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        return new WebAsyncTask<>(importTimeout.toMillis(), () -> {
+            patientImportService.importPatients(body, csv, response.getOutputStream());
+            response.flushBuffer();
+            return null;
+        });
     }
 
     @PutMapping("/{id}")
@@ -87,4 +269,30 @@ public class PatientController {
         patientService.deletePatient(id);
         return ResponseEntity.noContent().build();
     }
+
+    // weak ETags: the same version may be sent in several representations
+    private static String patientETag(long version) {
+        return "W/\"" + version + "\"";
+    }
+
+    private static String listETag(long version) {
+        return "W/\"g" + version + "\"";
+    }
+
+    /**
+     * Weak comparison of an {@code If-None-Match} header (a list of ETags or {@code *}) with an ETag.
+     */
+    private static boolean eTagMatches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = eTag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || (candidate.startsWith("W/") ? candidate.substring(2) : candidate).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
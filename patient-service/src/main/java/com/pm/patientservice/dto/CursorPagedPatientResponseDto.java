@@ -0,0 +1,83 @@
+package com.pm.patientservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of patients in cursor (keyset) pagination mode.
+ * <p>
+ * {@code nextCursor} is null on the last page. {@code totalElements} is only filled in
+ * when the client asked for it, counting the table costs a full scan.
+ */
+public class CursorPagedPatientResponseDto implements Serializable {
+    private final List<PatientResponseDTO> patients;
+    private final String nextCursor;
+    private final int pageSize;
+    private final Long totalElements;
+
+    public List<PatientResponseDTO> getPatients() {
+        return patients;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public Long getTotalElements() {
+        return totalElements;
+    }
+
+    @JsonCreator
+    private CursorPagedPatientResponseDto(
+            @JsonProperty("patients") List<PatientResponseDTO> patients,
+            @JsonProperty("nextCursor") String nextCursor,
+            @JsonProperty("pageSize") int pageSize,
+            @JsonProperty("totalElements") Long totalElements) {
+        this.patients = patients;
+        this.nextCursor = nextCursor;
+        this.pageSize = pageSize;
+        this.totalElements = totalElements;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private List<PatientResponseDTO> patients;
+        private String nextCursor;
+        private int pageSize;
+        private Long totalElements;
+
+        public Builder patients(List<PatientResponseDTO> patients) {
+            this.patients = patients;
+            return this;
+        }
+
+        public Builder nextCursor(String nextCursor) {
+            this.nextCursor = nextCursor;
+            return this;
+        }
+
+        public Builder pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Builder totalElements(Long totalElements) {
+            this.totalElements = totalElements;
+            return this;
+        }
+
+        public CursorPagedPatientResponseDto build() {
+            return new CursorPagedPatientResponseDto(patients, nextCursor, pageSize, totalElements);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.pm.patientservice.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Request body of {@code POST /patients/batch-get}.
+ *
+ * <ul>
+ *   <li><b>ids</b>: ids of the patients to return, at most {@code patient.batch-get.max-ids}.</li>
+ * </ul>
+ */
+public class PatientBatchGetRequestDTO {
+    @NotEmpty(message = "At least one id is required")
+    private List<@NotNull UUID> ids;
+
+    public List<UUID> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<UUID> ids) {
+        this.ids = ids;
+    }
+}
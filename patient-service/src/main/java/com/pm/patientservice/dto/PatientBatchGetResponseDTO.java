@@ -0,0 +1,29 @@
+package com.pm.patientservice.dto;
+
+import java.util.List;
+
+/**
+ * Response of {@code POST /patients/batch-get}.
+ *
+ * <ul>
+ *   <li><b>patients</b>: the patients found, in the order their ids were requested.</li>
+ *   <li><b>notFound</b>: the requested ids without a patient, in request order.</li>
+ * </ul>
+ */
+public class PatientBatchGetResponseDTO {
+    private final List<PatientResponseDTO> patients;
+    private final List<String> notFound;
+
+    public PatientBatchGetResponseDTO(List<PatientResponseDTO> patients, List<String> notFound) {
+        this.patients = patients;
+        this.notFound = notFound;
+    }
+
+    public List<PatientResponseDTO> getPatients() {
+        return patients;
+    }
+
+    public List<String> getNotFound() {
+        return notFound;
+    }
+}
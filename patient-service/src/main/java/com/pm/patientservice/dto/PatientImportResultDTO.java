@@ -0,0 +1,56 @@
+package com.pm.patientservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one row of a bulk patient import, streamed back to the client as one
+ * NDJSON line per input row.
+ *
+ * <ul>
+ *   <li><b>line</b>: line number of the row in the uploaded file.</li>
+ *   <li><b>status</b>: CREATED or REJECTED.</li>
+ *   <li><b>id</b>: id of the created patient, only for CREATED rows.</li>
+ *   <li><b>error</b>: why the row was rejected, only for REJECTED rows.</li>
+ * </ul>
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PatientImportResultDTO {
+    public static final String STATUS_CREATED = "CREATED";
+    public static final String STATUS_REJECTED = "REJECTED";
+
+    private final int line;
+    private final String status;
+    private final String id;
+    private final String error;
+
+    private PatientImportResultDTO(int line, String status, String id, String error) {
+        this.line = line;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    public static PatientImportResultDTO created(int line, String id) {
+        return new PatientImportResultDTO(line, STATUS_CREATED, id, null);
+    }
+
+    public static PatientImportResultDTO rejected(int line, String error) {
+        return new PatientImportResultDTO(line, STATUS_REJECTED, null, error);
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
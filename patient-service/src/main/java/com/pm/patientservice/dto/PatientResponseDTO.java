@@ -13,6 +13,7 @@ package com.pm.patientservice.dto;
  *   <li><b>email</b>: Patient's email address.</li>
  *   <li><b>address</b>: Patient's address.</li>
  *   <li><b>dateOfBirth</b>: Patient's date of birth.</li>
+ *   <li><b>version</b>: Version of the patient record, changes with every update.</li>
  * </ul>
  *
  * <p>
@@ -33,6 +34,7 @@ public class PatientResponseDTO {
     private String email;
     private String address;
     private String dateOfBirth;
+    private Long version;
 
     public String getId() {
         return id;
@@ -64,4 +66,10 @@ public class PatientResponseDTO {
     public void setDateOfBirth(String dateOfBirth) {
         this.dateOfBirth = dateOfBirth;
     }
+    public Long getVersion() {
+        return version;
+    }
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
@@ -3,113 +3,223 @@ package com.pm.patientservice.grpc;
 import billing.BillingRequest;
 import billing.BillingResponse;
 import billing.BillingServiceGrpc;
-import com.pm.patientservice.exception.BillingServiceException;
-import com.pm.patientservice.kafka.KafkaProducer;
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
-import io.github.resilience4j.retry.annotation.Retry;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.pm.patientservice.kafka.PatientEventOutbox;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.StatusRuntimeException;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class BillingServiceGrpcClient {
     private static final Logger log = LoggerFactory.getLogger(BillingServiceGrpcClient.class);
-    // provides a synchronous call-to-billing service similar to REST API calls
-    private final BillingServiceGrpc.BillingServiceBlockingStub blockingStub;
+    // non-blocking stub used for account creation after a patient is committed
+    private final BillingServiceGrpc.BillingServiceFutureStub futureStub;
 
     private final ManagedChannel channel;
 
-    private  final KafkaProducer kafkaProducer;
+    // null unless running on virtual threads, otherwise gRPC's shared executor is used
+    private final ExecutorService callbackExecutor;
+
+    private final PatientEventOutbox patientEventOutbox;
+
+    private final io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker;
+
+    // bounds the calls billing-service has to answer at once, the rest is left to the outbox relay
+    private final Semaphore inFlight;
+
+    private final int maxInFlight;
+
+    private final Duration deadline;
+
+    // how long a request's outbox row waits for the direct call before the relay may send it
+    private final Duration outboxHold;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Counter queued;
 
    public BillingServiceGrpcClient(
            @Value("${billing.service.address:localhost}") String serverAddress,
            @Value("${billing.service.grpc.port:9001}") int serverPort,
-           KafkaProducer kafkaProducer
+           @Value("${billing.service.grpc.max-in-flight:64}") int maxInFlight,
+           @Value("${billing.service.grpc.deadline:2s}") Duration deadline,
+           @Value("${billing.service.grpc.outbox-hold:30s}") Duration outboxHold,
+           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+           PatientEventOutbox patientEventOutbox,
+           CircuitBreakerRegistry circuitBreakerRegistry,
+           MeterRegistry meterRegistry
    ){
         log.info("Connecting to billing service at {}:{}", serverAddress, serverPort);
 
-       channel = ManagedChannelBuilder.forAddress(serverAddress, serverPort)
-               .usePlaintext()
-               .build();
+       ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forAddress(serverAddress, serverPort)
+               .usePlaintext();
+       if (virtualThreads) {
+           // call callbacks (including their outbox update) run on virtual threads
+           callbackExecutor = Executors.newVirtualThreadPerTaskExecutor();
+           channelBuilder.executor(callbackExecutor);
+       } else {
+           callbackExecutor = null;
+       }
+       channel = channelBuilder.build();
 
-       blockingStub = BillingServiceGrpc.newBlockingStub(channel);
+       futureStub = BillingServiceGrpc.newFutureStub(channel);
 
-       this.kafkaProducer = kafkaProducer;
+       this.patientEventOutbox = patientEventOutbox;
+       this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("billingService");
+       this.inFlight = new Semaphore(maxInFlight);
+       this.maxInFlight = maxInFlight;
+       this.deadline = deadline;
+       if (outboxHold.compareTo(deadline) <= 0) {
+           throw new IllegalArgumentException("billing.service.grpc.outbox-hold must be longer than the deadline");
+       }
+       this.outboxHold = outboxHold;
+       this.meterRegistry = meterRegistry;
+       this.queued = Counter.builder("billing.grpc.async.queued")
+               .description("Billing account requests left to the outbox relay")
+               .register(meterRegistry);
+       Gauge.builder("billing.grpc.async.in_flight", this, client -> client.maxInFlight - client.inFlight.availablePermits())
+               .register(meterRegistry);
+       // 1 for the channel's current state, 0 for the others
+       for (ConnectivityState state : ConnectivityState.values()) {
+           Gauge.builder("grpc.channel.state", channel, c -> c.getState(false) == state ? 1 : 0)
+                   .tag("target", "billing-service")
+                   .tag("state", state.name())
+                   .register(meterRegistry);
+       }
    }
 
-   public BillingResponse billingFallback(String patientId, String name, String email,Throwable throwable){
-       log.warn("[CIRCUIT BREAKER]: Billing service is unavailable . " +
-               "Triggered fallback : {}",throwable.getMessage());
-       kafkaProducer.sendBillingAccountEvent(patientId,name,email);
+    /**
+     * Creates the billing account of a newly created patient without blocking the caller.
+     * Must run in the transaction that creates the patient.
+     * <p>
+     * The request is written to the outbox for the "billing-account" topic, which
+     * billing-service consumes, so it commits or rolls back with the patient. The row is held
+     * back from the relay for {@code billing.service.grpc.outbox-hold} while billing-service is
+     * called directly after commit, through the future stub with a per-call deadline. A call
+     * that succeeds marks the row done. When the call fails, or isn't made because
+     * {@code billing.service.grpc.max-in-flight} calls are outstanding or the "billingService"
+     * circuit breaker is open, the row is released to the relay. If this instance dies in
+     * between, the relay sends the row once the hold is over.
+     */
+    public void createBillingAccountAsync(String patientId, String name, String email) {
+        Long requestId = patientEventOutbox.billingAccountRequested(patientId, name, email,
+                LocalDateTime.now().plus(outboxHold));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                sendBillingAccountRequest(requestId, patientId, name, email);
+            }
+        });
+    }
 
-       return BillingResponse.newBuilder()
-               .setAccountId("")
-               .setStatus("PENDING")
-               .build();
-   }
+    private void sendBillingAccountRequest(Long requestId, String patientId, String name, String email) {
+        if (!inFlight.tryAcquire()) {
+            record("rejected", 0);
+            leaveToRelay(requestId, patientId, "in-flight window full");
+            return;
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            inFlight.release();
+            record("circuit_open", 0);
+            leaveToRelay(requestId, patientId, "circuit breaker open");
+            return;
+        }
 
-   @CircuitBreaker(name = "billingService",fallbackMethod = "billingFallback")
-   @Retry(name="billingRetry")
-   public BillingResponse createBillingAccount(String patientId, String name, String email){
-       BillingRequest billingRequest = BillingRequest.newBuilder()
-               .setPatientId(patientId)
-               .setEmail(email)
-               .setName(name)
-               .build();
-
-       try {
-           BillingResponse billingResponse = blockingStub.createBillingAccount(billingRequest);
-           log.info("Billing account created for patient with id {}: {}", patientId, billingResponse);
-           return billingResponse;
-       } catch (StatusRuntimeException e) {
-           String errorMessage;
-           String errorCode = switch (e.getStatus().getCode()) {
-               case ALREADY_EXISTS -> {
-                   errorMessage = "Billing account already exists for patient " + patientId;
-                   yield "BILLING_ACCOUNT_EXISTS";
-               }
-               case INVALID_ARGUMENT -> {
-                   errorMessage = "Invalid billing information provided: " + e.getStatus().getDescription();
-                   yield "INVALID_BILLING_INFO";
-               }
-               case DEADLINE_EXCEEDED -> {
-                   errorMessage = "Billing service request timed out";
-                   yield "BILLING_TIMEOUT";
-               }
-               case UNAVAILABLE -> {
-                   errorMessage = "Billing service is currently unavailable";
-                   yield "BILLING_SERVICE_DOWN";
-               }
-               case UNAUTHENTICATED -> {
-                   errorMessage = "Authentication failed with billing service";
-                   yield "BILLING_AUTH_FAILED";
-               }
-               default -> {
-                   errorMessage = "Unexpected error occurred while creating billing account";
-                   yield "BILLING_UNKNOWN_ERROR";
-               }
-           };
-
-           log.error("Failed to create billing account for patient {}: {} ({})",
-                   patientId, errorMessage, e.getStatus(), e);
-           throw new BillingServiceException(errorMessage, errorCode, e);
-       } catch (Exception e) {
-           log.error("Unexpected error while creating billing account for patient {}", patientId, e);
-           throw new BillingServiceException(
-                   "Internal error while processing billing request",
-                   "BILLING_INTERNAL_ERROR",
-                   e
-           );
-       }
+        BillingRequest billingRequest = BillingRequest.newBuilder()
+                .setPatientId(patientId)
+                .setEmail(email)
+                .setName(name)
+                .build();
+        long start = System.nanoTime();
+        try {
+            Futures.addCallback(
+                    futureStub.withDeadlineAfter(deadline.toMillis(), TimeUnit.MILLISECONDS)
+                            .createBillingAccount(billingRequest),
+                    new FutureCallback<>() {
+                        @Override
+                        public void onSuccess(BillingResponse billingResponse) {
+                            long elapsed = System.nanoTime() - start;
+                            inFlight.release();
+                            circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                            record("success", elapsed);
+                            log.info("Billing account created for patient with id {}: {}", patientId, billingResponse);
+                            acknowledge(requestId, patientId);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            long elapsed = System.nanoTime() - start;
+                            inFlight.release();
+                            if (Status.fromThrowable(t).getCode() == Status.Code.ALREADY_EXISTS) {
+                                circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                                record("already_exists", elapsed);
+                                acknowledge(requestId, patientId);
+                                return;
+                            }
+                            circuitBreaker.onError(elapsed, TimeUnit.NANOSECONDS, t);
+                            record("failure", elapsed);
+                            leaveToRelay(requestId, patientId, Status.fromThrowable(t).toString());
+                        }
+                    },
+                    // the callbacks are short, but for the update of the outbox row
+                    MoreExecutors.directExecutor());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+            record("failure", System.nanoTime() - start);
+            leaveToRelay(requestId, patientId, e.getMessage());
+        }
+    }
 
-   }
+    private void acknowledge(Long requestId, String patientId) {
+        try {
+            patientEventOutbox.billingAccountCreated(requestId);
+        } catch (Exception e) {
+            // the relay sends the request after the hold, billing-service finds the account exists
+            log.warn("Could not mark the billing account request of patient {} done", patientId, e);
+        }
+    }
+
+    private void leaveToRelay(Long requestId, String patientId, String reason) {
+        log.warn("Billing account for patient {} left to the outbox relay : {}", patientId, reason);
+        queued.increment();
+        try {
+            patientEventOutbox.releaseBillingAccountRequest(requestId);
+        } catch (Exception e) {
+            // the row is still durable, the relay sends it once the hold is over
+            log.warn("Could not release the billing account request of patient {}", patientId, e);
+        }
+    }
+
+    private void record(String outcome, long elapsedNanos) {
+        Timer.builder("billing.grpc.async.calls")
+                .description("Asynchronous billing account calls by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
 
     @PreDestroy
     public void shutdown() {
@@ -124,6 +234,9 @@ public class BillingServiceGrpcClient {
             channel.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        if (callbackExecutor != null) {
+            callbackExecutor.shutdown();
+        }
     }
 
 
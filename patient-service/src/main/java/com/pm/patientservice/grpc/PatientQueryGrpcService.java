@@ -0,0 +1,186 @@
+package com.pm.patientservice.grpc;
+
+import com.google.protobuf.Timestamp;
+import com.pm.patientservice.dto.PatientBatchGetResponseDTO;
+import com.pm.patientservice.exception.PatientNotFoundException;
+import com.pm.patientservice.mapper.PatientMapper;
+import com.pm.patientservice.mapper.PatientProtoMapper;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.repository.PatientRepository;
+import com.pm.patientservice.service.PatientService;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import net.devh.boot.grpc.server.service.GrpcService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import patient.dto.PatientResponse;
+import patient.query.GetPatientRequest;
+import patient.query.GetPatientsRequest;
+import patient.query.GetPatientsResponse;
+import patient.query.PatientChange;
+import patient.query.PatientQueryServiceGrpc.PatientQueryServiceImplBase;
+import patient.query.StreamPatientsChangedSinceRequest;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Internal gRPC read API of patient-service, see {@code patient_query.proto}.
+ * <p>
+ * {@code GetPatient} and {@code GetPatients} go through the same caches as
+ * {@code GET /patients/{id}} and {@code POST /patients/batch-get}.
+ * {@code StreamPatientsChangedSince} pages through the patients by {@code (updated_at, id)}
+ * and follows the client's flow control: a page is only read from the database once the
+ * client has taken the previous one, so a slow client holds no more than a page in memory
+ * and no connection between pages.
+ * <p>
+ * The keyset is the {@code @UpdateTimestamp} Hibernate sets at flush, before the commit, so
+ * the stream isn't a change log: a transaction that commits after a page past its
+ * {@code updated_at} was read is skipped, within one call as well as across resumed ones,
+ * and deletes aren't emitted. Clients resume with a margin of at least the longest write
+ * transaction and reconcile deletions on their own, as documented on the RPC. A gap-free
+ * feed would have to follow the commit order of the outbox instead.
+ */
+@GrpcService
+public class PatientQueryGrpcService extends PatientQueryServiceImplBase {
+    private static final Logger log = LoggerFactory.getLogger(PatientQueryGrpcService.class);
+    private static final UUID NIL_UUID = new UUID(0, 0);
+
+    private final PatientService patientService;
+    private final PatientRepository patientRepository;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    public PatientQueryGrpcService(PatientService patientService,
+                                   PatientRepository patientRepository,
+                                   @Value("${patient.grpc.stream.page-size:500}") int defaultPageSize,
+                                   @Value("${patient.grpc.stream.max-page-size:5000}") int maxPageSize) {
+        this.patientService = patientService;
+        this.patientRepository = patientRepository;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @Override
+    public void getPatient(GetPatientRequest request, StreamObserver<PatientResponse> responseObserver) {
+        try {
+            UUID id = UUID.fromString(request.getId());
+            responseObserver.onNext(PatientProtoMapper.toProto(patientService.getPatientById(id)));
+            responseObserver.onCompleted();
+        } catch (PatientNotFoundException e) {
+            responseObserver.onError(Status.NOT_FOUND.withDescription(e.getMessage()).asException());
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asException());
+        } catch (Exception e) {
+            log.error("Unexpected error getting patient {}", request.getId(), e);
+            responseObserver.onError(Status.INTERNAL.withDescription("Internal server error").asException());
+        }
+    }
+
+    @Override
+    public void getPatients(GetPatientsRequest request, StreamObserver<GetPatientsResponse> responseObserver) {
+        try {
+            List<UUID> ids = request.getIdsList().stream().map(UUID::fromString).toList();
+            PatientBatchGetResponseDTO result = patientService.getPatientsByIds(ids);
+
+            GetPatientsResponse.Builder response = GetPatientsResponse.newBuilder()
+                    .addAllNotFound(result.getNotFound());
+            result.getPatients().forEach(patient -> response.addPatients(PatientProtoMapper.toProto(patient)));
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        } catch (IllegalArgumentException e) {
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asException());
+        } catch (Exception e) {
+            log.error("Unexpected error getting {} patients", request.getIdsCount(), e);
+            responseObserver.onError(Status.INTERNAL.withDescription("Internal server error").asException());
+        }
+    }
+
+    @Override
+    public void streamPatientsChangedSince(StreamPatientsChangedSinceRequest request,
+                                           StreamObserver<PatientChange> responseObserver) {
+        int pageSize = request.getPageSize() > 0 ? Math.min(request.getPageSize(), maxPageSize) : defaultPageSize;
+        Instant since = request.hasSince()
+                ? Instant.ofEpochSecond(request.getSince().getSeconds(), request.getSince().getNanos())
+                : Instant.EPOCH;
+
+        ServerCallStreamObserver<PatientChange> observer = (ServerCallStreamObserver<PatientChange>) responseObserver;
+        ChangeStream stream = new ChangeStream(observer, since, pageSize);
+        observer.setOnCancelHandler(stream::cancel);
+        // called once the call is ready and again whenever the client has taken what was sent
+        observer.setOnReadyHandler(stream::drain);
+    }
+
+    /**
+     * One {@code StreamPatientsChangedSince} call. The gRPC callbacks of a call never run
+     * concurrently, so the state needs no locking.
+     */
+    private final class ChangeStream {
+        private final ServerCallStreamObserver<PatientChange> observer;
+        private final int pageSize;
+        private final Deque<Patient> page = new ArrayDeque<>();
+        private Instant afterUpdatedAt;
+        private UUID afterId = NIL_UUID;
+        private boolean done;
+
+        private ChangeStream(ServerCallStreamObserver<PatientChange> observer, Instant since, int pageSize) {
+            this.observer = observer;
+            this.afterUpdatedAt = since;
+            this.pageSize = pageSize;
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            try {
+                while (observer.isReady()) {
+                    if (page.isEmpty() && !readPage()) {
+                        done = true;
+                        observer.onCompleted();
+                        return;
+                    }
+                    observer.onNext(toChange(page.poll()));
+                }
+            } catch (Exception e) {
+                log.error("Patient change stream failed after {} {}", afterUpdatedAt, afterId, e);
+                done = true;
+                observer.onError(Status.INTERNAL.withDescription("Internal server error").asException());
+            }
+        }
+
+        // false once there is nothing left
+        private boolean readPage() {
+            List<Patient> patients = patientRepository.findChangedAfter(afterUpdatedAt, afterId, Limit.of(pageSize));
+            if (patients.isEmpty()) {
+                return false;
+            }
+            Patient last = patients.get(patients.size() - 1);
+            afterUpdatedAt = last.getUpdatedAt();
+            afterId = last.getId();
+            page.addAll(patients);
+            return true;
+        }
+
+        private void cancel() {
+            done = true;
+            page.clear();
+        }
+    }
+
+    private static PatientChange toChange(Patient patient) {
+        Instant updatedAt = patient.getUpdatedAt();
+        return PatientChange.newBuilder()
+                .setPatient(PatientProtoMapper.toProto(PatientMapper.toPatientResponseDTO(patient)))
+                .setUpdatedAt(Timestamp.newBuilder()
+                        .setSeconds(updatedAt.getEpochSecond())
+                        .setNanos(updatedAt.getNano()))
+                .build();
+    }
+}
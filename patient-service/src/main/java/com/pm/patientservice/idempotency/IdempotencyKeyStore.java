@@ -0,0 +1,242 @@
+package com.pm.patientservice.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.exception.IdempotencyKeyInProgressException;
+import com.pm.patientservice.exception.IdempotencyKeyReusedException;
+import com.pm.patientservice.mapper.PatientProtoMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+import patient.idempotency.IdempotencyRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs patient creations at most once per {@code Idempotency-Key}.
+ * <p>
+ * The first request with a key claims it with {@code SET NX}, storing an in-progress
+ * {@link IdempotencyRecord} that expires after {@code patient.idempotency.in-progress-ttl},
+ * so the key frees itself if the instance dies. Once the patient is created the record is
+ * replaced by the outcome, kept for {@code patient.idempotency.ttl}; a creation that fails
+ * releases the key, and a retry runs again. Records are protobuf, holding a SHA-256 of the
+ * request body and the created patient.
+ * <p>
+ * A request finding a completed record gets the stored patient back. One finding the key
+ * still in progress polls until the outcome shows up, for up to
+ * {@code patient.idempotency.wait}, and is refused with 409 after that. A key sent again
+ * with a different body is refused with 422. When Redis can't be reached the creation
+ * just runs.
+ * <p>
+ * Metrics: {@code patient.idempotency.requests} counts keyed requests by {@code result}
+ * ({@code new}, {@code replayed}, {@code mismatch}, {@code in_progress},
+ * {@code unavailable}); every result but {@code new} is a duplicate.
+ * {@code patient.idempotency.wait} times the waits for a concurrent duplicate's outcome.
+ */
+@Component
+public class IdempotencyKeyStore {
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyKeyStore.class);
+    private static final String KEY_PREFIX = "idempotency:createPatient:";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long POLL_MILLIS = 50;
+    // deletes the claim only if it is still ours, an expired claim may have been re-taken
+    private static final byte[] RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration inProgressTtl;
+    private final Duration wait;
+
+    private final Counter created;
+    private final Counter replayed;
+    private final Counter mismatched;
+    private final Counter inProgress;
+    private final Counter unavailable;
+    private final Timer waits;
+
+    public IdempotencyKeyStore(StringRedisTemplate redisTemplate,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${patient.idempotency.ttl:24h}") Duration ttl,
+                               @Value("${patient.idempotency.in-progress-ttl:30s}") Duration inProgressTtl,
+                               @Value("${patient.idempotency.wait:5s}") Duration wait) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.inProgressTtl = inProgressTtl;
+        this.wait = wait;
+
+        this.created = requestCounter(meterRegistry, "new");
+        this.replayed = requestCounter(meterRegistry, "replayed");
+        this.mismatched = requestCounter(meterRegistry, "mismatch");
+        this.inProgress = requestCounter(meterRegistry, "in_progress");
+        this.unavailable = requestCounter(meterRegistry, "unavailable");
+        this.waits = Timer.builder("patient.idempotency.wait")
+                .description("Time a duplicate waited for the outcome of the request it repeats")
+                .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("patient.idempotency.requests")
+                .description("Requests carrying an Idempotency-Key, by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The patient of a creation, and whether it was replayed from an earlier request.
+     */
+    public record Outcome(PatientResponseDTO patient, boolean replayed) {
+    }
+
+    /**
+     * Runs {@code create} unless a request with the same key already did.
+     *
+     * @throws IllegalArgumentException          if the key is blank or too long
+     * @throws IdempotencyKeyReusedException     if the key was used with another request body
+     * @throws IdempotencyKeyInProgressException if the request with this key is still running
+     */
+    public Outcome createOnce(String idempotencyKey, PatientRequestDTO request, Supplier<PatientResponseDTO> create) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        byte[] key = (KEY_PREFIX + idempotencyKey).getBytes(StandardCharsets.UTF_8);
+        ByteString requestHash = hash(request);
+        byte[] claim = IdempotencyRecord.newBuilder()
+                .setRequestHash(requestHash)
+                .setOwner(UUID.randomUUID().toString())
+                .build()
+                .toByteArray();
+
+        long start = System.nanoTime();
+        long deadline = start + wait.toNanos();
+        boolean waited = false;
+        while (true) {
+            IdempotencyRecord existing;
+            try {
+                if (claim(key, claim)) {
+                    break;
+                }
+                existing = read(key);
+            } catch (RuntimeException e) {
+                log.warn("{REDIS} Idempotency-Key {} could not be checked, creating the patient without it",
+                        idempotencyKey, e);
+                unavailable.increment();
+                return new Outcome(create.get(), false);
+            }
+            if (existing == null) {
+                // released or expired in between, claim it again
+                continue;
+            }
+            if (!existing.getRequestHash().equals(requestHash)) {
+                mismatched.increment();
+                throw new IdempotencyKeyReusedException(
+                        "Idempotency-Key " + idempotencyKey + " was already used with a different request");
+            }
+            if (existing.getCompleted()) {
+                if (waited) {
+                    waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                replayed.increment();
+                return new Outcome(PatientProtoMapper.fromProto(existing.getResponse()), true);
+            }
+            if (System.nanoTime() >= deadline) {
+                waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                inProgress.increment();
+                throw new IdempotencyKeyInProgressException(
+                        "A request with Idempotency-Key " + idempotencyKey + " is still in progress");
+            }
+            waited = true;
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IdempotencyKeyInProgressException(
+                        "A request with Idempotency-Key " + idempotencyKey + " is still in progress");
+            }
+        }
+
+        created.increment();
+        PatientResponseDTO patient;
+        try {
+            patient = create.get();
+        } catch (RuntimeException e) {
+            release(key, claim);
+            throw e;
+        }
+        complete(key, IdempotencyRecord.newBuilder()
+                .setRequestHash(requestHash)
+                .setCompleted(true)
+                .setResponse(PatientProtoMapper.toProto(patient))
+                .build());
+        return new Outcome(patient, false);
+    }
+
+    private boolean claim(byte[] key, byte[] claim) {
+        Boolean claimed = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(key, claim, Expiration.from(inProgressTtl), RedisStringCommands.SetOption.ifAbsent()));
+        return Boolean.TRUE.equals(claimed);
+    }
+
+    private IdempotencyRecord read(byte[] key) {
+        byte[] value = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+        if (value == null) {
+            return null;
+        }
+        try {
+            return IdempotencyRecord.parseFrom(value);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Unreadable idempotency record", e);
+        }
+    }
+
+    private void complete(byte[] key, IdempotencyRecord outcome) {
+        try {
+            redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                    .set(key, outcome.toByteArray(), Expiration.from(ttl), RedisStringCommands.SetOption.upsert()));
+        } catch (RuntimeException e) {
+            // the claim expires and a retry creates the patient again, which the email check refuses
+            log.warn("{REDIS} Could not store the outcome of an idempotent patient creation", e);
+        }
+    }
+
+    private void release(byte[] key, byte[] claim) {
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands()
+                    .eval(RELEASE_SCRIPT, ReturnType.INTEGER, 1, key, claim));
+        } catch (RuntimeException e) {
+            // the claim expires on its own
+            log.warn("{REDIS} Could not release an idempotency claim", e);
+        }
+    }
+
+    private ByteString hash(PatientRequestDTO request) {
+        try {
+            return ByteString.copyFrom(MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not hash the patient request", e);
+        }
+    }
+}
@@ -1,19 +1,47 @@
 package com.pm.patientservice.kafka;
 
 import com.pm.patientservice.model.Patient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 import patient.events.PatientEvent;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends patient and billing account events to Kafka. Every record is keyed by patient ID, so
+ * a patient's events stay on one partition and in order, while consumers work partitions
+ * in parallel.
+ * <p>
+ * At most {@code patient.kafka.producer.max-pending} records wait for their
+ * acknowledgement at once. Past that, {@link #send} blocks the caller until the broker
+ * catches up, for up to {@code patient.kafka.producer.max-block}, and then fails the send.
+ * A slow broker thus slows down the outbox relay instead of filling the heap. Batching,
+ * compression and idempotence are producer settings ({@code spring.kafka.producer.*}).
+ * <p>
+ * Metrics: {@code kafka.producer.sends} times each send up to its acknowledgement, by
+ * topic and result; {@code kafka.producer.pending} is the number of unacknowledged
+ * records and {@code kafka.producer.backpressure} counts the sends that had to wait
+ * ({@code result=waited}) or gave up ({@code result=rejected}).
+ */
 @Service
 public class KafkaProducer {
     private static final Logger log = LoggerFactory.getLogger(KafkaProducer.class);
-    private static final String EVENT_TYPE_PATIENT_CREATED = "PATIENT_CREATED";
-    private static final String EVENT_TYPE_PATIENT_UPDATED = "PATIENT_UPDATED";
+    static final String EVENT_TYPE_PATIENT_CREATED = "PATIENT_CREATED";
+    static final String EVENT_TYPE_PATIENT_UPDATED = "PATIENT_UPDATED";
+    static final String PATIENT_UPDATED_TOPIC = "patient.updated";
+    static final String BILLING_ACCOUNT_TOPIC = "billing-account";
     public static final String BILLING_ACCOUNT_CREATE_REQUESTED = "BILLING_ACCOUNT_CREATE_REQUESTED";
     /**
      * A KafkaTemplate instance used for sending messages to a Kafka topic.
@@ -25,11 +53,42 @@ public class KafkaProducer {
     @Value("${kafka.topic.patient.create:patient.created}")
     String patientEventsTopic;
 
-    public KafkaProducer(KafkaTemplate<String, byte[]> kafkaTemplate) {
+    // one permit per record not yet acknowledged
+    private final Semaphore pending;
+    private final int maxPending;
+    private final Duration maxBlock;
+    private final MeterRegistry meterRegistry;
+    private final Counter waited;
+    private final Counter rejected;
+
+    public KafkaProducer(KafkaTemplate<String, byte[]> kafkaTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${patient.kafka.producer.max-pending:10000}") int maxPending,
+                         @Value("${patient.kafka.producer.max-block:5s}") Duration maxBlock) {
         this.kafkaTemplate = kafkaTemplate;
+        this.pending = new Semaphore(maxPending);
+        this.maxPending = maxPending;
+        this.maxBlock = maxBlock;
+        this.meterRegistry = meterRegistry;
+        this.waited = backpressureCounter(meterRegistry, "waited");
+        this.rejected = backpressureCounter(meterRegistry, "rejected");
+        Gauge.builder("kafka.producer.pending", this, producer -> producer.maxPending - producer.pending.availablePermits())
+                .description("Records sent and not yet acknowledged")
+                .register(meterRegistry);
+    }
+
+    private static Counter backpressureCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("kafka.producer.backpressure")
+                .description("Sends that found the pending record limit reached")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public String getPatientEventsTopic() {
+        return patientEventsTopic;
     }
 
-    private PatientEvent buildPatientEvent(Patient patient, String eventType) {
+    PatientEvent buildPatientEvent(Patient patient, String eventType) {
         return PatientEvent.newBuilder()
                 .setPatientId(patient.getId().toString())
                 .setName(patient.getName())
@@ -39,53 +98,86 @@ public class KafkaProducer {
     }
 
 
-    public void sendPatientCreatedEvent
-            (Patient patient) {
+    /**
+     * Sends a record keyed by {@code key}, waiting for room if too many records are pending.
+     *
+     * @return the acknowledgement, failed with a {@link KafkaException} if no room was made
+     * within {@code patient.kafka.producer.max-block}
+     */
+    public CompletableFuture<SendResult<String, byte[]>> send(String topic, String key, byte[] payload) {
+        long start = System.nanoTime();
         try {
-            PatientEvent patientEvent = buildPatientEvent(patient, EVENT_TYPE_PATIENT_CREATED);
-
-            kafkaTemplate.send(patientEventsTopic, patientEvent.toByteArray());
-        } catch (KafkaException ke) {
-            log.error("Kafka error while sending patient created event for patient ID: {}",
-                    patient.getId(), ke);
-        } catch (Exception e) {
-            log.error("Unexpected error while sending patient created event for patient ID: {}",
-                    patient.getId(), e);
+            acquire(topic);
+        } catch (KafkaException e) {
+            return CompletableFuture.failedFuture(e);
         }
-    }
 
-    public void sendPatientUpdatedEvent
-            (Patient patient) {
+        CompletableFuture<SendResult<String, byte[]>> future;
         try {
-            PatientEvent patientEvent = buildPatientEvent(patient, EVENT_TYPE_PATIENT_UPDATED);
-
-            kafkaTemplate.send("patient.updated", patientEvent.toByteArray());
-        } catch (KafkaException ke) {
-            log.error("Kafka error while sending patient created event for patient ID: {}",
-                    patient.getId(), ke);
-        } catch (Exception e) {
-            log.error("Unexpected error while sending patient created event for patient ID: {}",
-                    patient.getId(), e);
+            future = kafkaTemplate.send(topic, key, payload);
+        } catch (RuntimeException e) {
+            pending.release();
+            record(topic, "failure", start);
+            return CompletableFuture.failedFuture(e);
         }
+        // runs on the producer's I/O thread, keep it short
+        return future.whenComplete((result, throwable) -> {
+            pending.release();
+            record(topic, throwable == null ? "success" : "failure", start);
+        });
     }
 
-    public void sendBillingAccountEvent(String patientId,String name,String email){
-        billing.events.BillingAccountEvent billingAccountEvent =
-                billing.events.BillingAccountEvent.newBuilder()
-                        .setPatientId(patientId)
-                        .setEmail(email)
-                        .setName(name)
-                        .setEventType(BILLING_ACCOUNT_CREATE_REQUESTED)
-                        .build();
-
-        try{
-            kafkaTemplate.send("billing-account",billingAccountEvent.toByteArray());
-        }catch (KafkaException ke) {
-            log.error("Kafka error while sending billing account event for patient ID: {}",
-                    patientId, ke);
-        } catch (Exception e) {
-            log.error("Unexpected error while sending billing account event for patient ID: {}",
-                   patientId, e);
+    private void acquire(String topic) {
+        if (pending.tryAcquire()) {
+            return;
+        }
+        waited.increment();
+        try {
+            if (pending.tryAcquire(maxBlock.toNanos(), TimeUnit.NANOSECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        rejected.increment();
+        throw new KafkaException("No room to send to " + topic + ", " + maxPending
+                + " records are waiting for the broker");
+    }
+
+    private void record(String topic, String result, long startNanos) {
+        Timer.builder("kafka.producer.sends")
+                .description("Kafka sends up to their acknowledgement, by topic and result")
+                .tag("topic", topic)
+                .tag("result", result)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void sendPatientCreatedEvent(Patient patient) {
+        PatientEvent patientEvent = buildPatientEvent(patient, EVENT_TYPE_PATIENT_CREATED);
+        sendAndLog(patientEventsTopic, patient.getId().toString(), patientEvent.toByteArray(), "patient created");
+    }
+
+    public void sendPatientUpdatedEvent(Patient patient) {
+        PatientEvent patientEvent = buildPatientEvent(patient, EVENT_TYPE_PATIENT_UPDATED);
+        sendAndLog(PATIENT_UPDATED_TOPIC, patient.getId().toString(), patientEvent.toByteArray(), "patient updated");
+    }
+
+    billing.events.BillingAccountEvent buildBillingAccountEvent(String patientId, String name, String email) {
+        return billing.events.BillingAccountEvent.newBuilder()
+                .setPatientId(patientId)
+                .setEmail(email)
+                .setName(name)
+                .setEventType(BILLING_ACCOUNT_CREATE_REQUESTED)
+                .build();
+    }
+
+    // fire and forget: a failure is only logged
+    private void sendAndLog(String topic, String patientId, byte[] payload, String event) {
+        send(topic, patientId, payload).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                log.error("Kafka error while sending {} event for patient ID: {}", event, patientId, throwable);
+            }
+        });
     }
 }
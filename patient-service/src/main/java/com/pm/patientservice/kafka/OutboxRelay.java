@@ -0,0 +1,223 @@
+package com.pm.patientservice.kafka;
+
+import com.pm.patientservice.model.OutboxEvent;
+import com.pm.patientservice.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the transactional outbox to Kafka.
+ * <p>
+ * Every {@code patient.outbox.relay.interval-ms} the relay drains pending rows in batches
+ * of {@code patient.outbox.relay.batch-size}, in id order. A run holds a session-level
+ * PostgreSQL advisory lock on a connection of its own, so with several replicas only one
+ * relays at a time and events leave in the order they were written. Each batch is read in
+ * one short transaction. The whole batch is then sent at once through
+ * {@link KafkaProducer}, keyed by patient ID so a patient's events stay on one partition,
+ * and the producer batches the records. No transaction is open while the relay waits for
+ * the acknowledgements. It then marks the acknowledged prefix of the batch as published
+ * with a single update, in a second short transaction. A failed send stops the batch
+ * there: no further event is handed to the producer once one has failed, and the rest is
+ * sent again on the next run, so delivery is at-least-once. Only the events already handed
+ * over when the failure showed can land ahead of the failed one. The producer is
+ * idempotent, which keeps its own retries from reordering or duplicating records.
+ * <p>
+ * Rows with a {@code deliverAfter} in the future are skipped until then. Billing account
+ * requests are held like this while their gRPC call runs, and a call that succeeds marks
+ * its row published, so only unacknowledged requests are relayed.
+ * <p>
+ * Published rows are purged after {@code patient.outbox.retention}.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    // advisory lock key shared by all patient-service instances
+    private static final long RELAY_LOCK_KEY = 0x7061_7469_656e_74L;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final KafkaProducer kafkaProducer;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int batchSize;
+    private final Duration sendTimeout;
+    private final Duration retention;
+
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter published;
+    private final Counter failures;
+    private final Timer publishDelay;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       KafkaProducer kafkaProducer,
+                       PlatformTransactionManager transactionManager,
+                       DataSource dataSource,
+                       MeterRegistry meterRegistry,
+                       @Value("${patient.outbox.relay.batch-size:500}") int batchSize,
+                       @Value("${patient.outbox.relay.send-timeout:10s}") Duration sendTimeout,
+                       @Value("${patient.outbox.retention:1h}") Duration retention) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.kafkaProducer = kafkaProducer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.batchSize = batchSize;
+        this.sendTimeout = sendTimeout;
+        this.retention = retention;
+
+        Gauge.builder("outbox.backlog", backlog, AtomicLong::get)
+                .description("Outbox events not yet published")
+                .register(meterRegistry);
+        Gauge.builder("outbox.lag", lagMillis, AtomicLong::get)
+                .description("Age of the oldest unpublished outbox event")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.published = Counter.builder("outbox.published").register(meterRegistry);
+        this.failures = Counter.builder("outbox.publish.failures").register(meterRegistry);
+        this.publishDelay = Timer.builder("outbox.publish.delay")
+                .description("Time from outbox write to Kafka acknowledgement")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${patient.outbox.relay.interval-ms:200}")
+    public void relay() {
+        try {
+            // outside a transaction, so the connection is the primary's and stays in autocommit
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                if (!advisoryLock(connection, "SELECT pg_try_advisory_lock(?)")) {
+                    return null;
+                }
+                try {
+                    while (relayBatch() == batchSize) {
+                        // more may be pending
+                    }
+                } finally {
+                    advisoryLock(connection, "SELECT pg_advisory_unlock(?)");
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Outbox relay run failed", e);
+        } finally {
+            updateBacklog();
+        }
+    }
+
+    /**
+     * @return the number of events published, the batch size if more may be pending
+     */
+    private int relayBatch() {
+        List<OutboxEvent> batch = transactionTemplate.execute(status ->
+                outboxEventRepository.findUnpublished(LocalDateTime.now(), batchSize));
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+
+        List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>(batch.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        for (OutboxEvent event : batch) {
+            // events after a failed one would overtake it, they wait for the next run
+            if (failed.get()) {
+                break;
+            }
+            // blocks while the producer has too many records pending
+            CompletableFuture<SendResult<String, byte[]>> send =
+                    kafkaProducer.send(event.getTopic(), event.getAggregateId(), event.getPayload());
+            send.whenComplete((result, e) -> {
+                if (e != null) {
+                    failed.set(true);
+                }
+            });
+            sends.add(send);
+        }
+
+        List<Long> acknowledged = new ArrayList<>(sends.size());
+        long deadline = System.nanoTime() + sendTimeout.toNanos();
+        for (int i = 0; i < sends.size(); i++) {
+            OutboxEvent event = batch.get(i);
+            try {
+                sends.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                failures.increment();
+                log.warn("Outbox event {} ({} for {}) not acknowledged, {} events left for the next run",
+                        event.getId(), event.getEventType(), event.getAggregateId(), batch.size() - i, e);
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            acknowledged.add(event.getId());
+        }
+
+        if (!acknowledged.isEmpty()) {
+            LocalDateTime now = LocalDateTime.now();
+            transactionTemplate.executeWithoutResult(status -> outboxEventRepository.markPublished(acknowledged, now));
+            published.increment(acknowledged.size());
+            for (int i = 0; i < acknowledged.size(); i++) {
+                publishDelay.record(Duration.between(batch.get(i).getCreatedAt(), now));
+            }
+        }
+        // a partial batch ends this run, so a failing broker isn't hammered in a loop
+        return acknowledged.size() == batch.size() ? batch.size() : 0;
+    }
+
+    // the lock lives as long as the session, should the connection break it is released with it
+    private static boolean advisoryLock(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, RELAY_LOCK_KEY);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${patient.outbox.cleanup-interval-ms:600000}")
+    public void purgePublished() {
+        Integer deleted = transactionTemplate.execute(status ->
+                outboxEventRepository.deletePublishedBefore(LocalDateTime.now().minus(retention)));
+        if (deleted != null && deleted > 0) {
+            log.info("Purged {} published outbox events", deleted);
+        }
+    }
+
+    private void updateBacklog() {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                backlog.set(outboxEventRepository.countByPublishedAtIsNull());
+                LocalDateTime oldest = outboxEventRepository.findOldestUnpublishedCreatedAt();
+                lagMillis.set(oldest == null ? 0 : Duration.between(oldest, LocalDateTime.now()).toMillis());
+            });
+        } catch (Exception e) {
+            log.warn("Could not read the outbox backlog", e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.pm.patientservice.kafka;
+
+import com.pm.patientservice.model.OutboxEvent;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.repository.OutboxEventRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes patient events to the transactional outbox instead of sending them to Kafka.
+ * <p>
+ * Patient events join the caller's transaction (and refuse to run without one), so the
+ * event commits or rolls back together with the patient change. {@link OutboxRelay}
+ * publishes the rows afterwards, keyed by patient ID.
+ */
+@Service
+public class PatientEventOutbox {
+    private static final String INSERT_OUTBOX_SQL =
+            "INSERT INTO patient_outbox (aggregate_id, event_type, topic, payload, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final KafkaProducer kafkaProducer;
+
+    public PatientEventOutbox(OutboxEventRepository outboxEventRepository,
+                              JdbcTemplate jdbcTemplate,
+                              KafkaProducer kafkaProducer) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.kafkaProducer = kafkaProducer;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void patientCreated(Patient patient) {
+        outboxEventRepository.save(createdEvent(patient));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void patientUpdated(Patient patient) {
+        outboxEventRepository.save(new OutboxEvent(
+                patient.getId().toString(),
+                KafkaProducer.EVENT_TYPE_PATIENT_UPDATED,
+                KafkaProducer.PATIENT_UPDATED_TOPIC,
+                kafkaProducer.buildPatientEvent(patient, KafkaProducer.EVENT_TYPE_PATIENT_UPDATED).toByteArray()));
+    }
+
+    /**
+     * Queues the billing account request of a new patient with the patient change. The row
+     * is held back from the relay until {@code deliverAfter}, as billing-service is called
+     * directly first; billing-service also consumes the "billing-account" topic.
+     *
+     * @return the id of the row, for {@link #billingAccountCreated} or {@link #releaseBillingAccountRequest}
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Long billingAccountRequested(String patientId, String name, String email, LocalDateTime deliverAfter) {
+        OutboxEvent event = billingAccountEvent(patientId, name, email);
+        event.setDeliverAfter(deliverAfter);
+        return outboxEventRepository.save(event).getId();
+    }
+
+    /**
+     * Marks a held billing account request done, billing-service acknowledged the direct call.
+     */
+    @Transactional
+    public void billingAccountCreated(Long requestId) {
+        outboxEventRepository.markPublished(List.of(requestId), LocalDateTime.now());
+    }
+
+    /**
+     * Hands a held billing account request to the relay, the direct call failed or wasn't made.
+     */
+    @Transactional
+    public void releaseBillingAccountRequest(Long requestId) {
+        outboxEventRepository.release(requestId);
+    }
+
+    /**
+     * Queues a patient created event and a billing account request for each patient, written
+     * with one JDBC batch. Used by the bulk import, which creates billing accounts through the
+     * "billing-account" topic rather than gRPC.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void patientsImported(List<Patient> patients) {
+        List<Object[]> rows = new ArrayList<>(patients.size() * 2);
+        for (Patient patient : patients) {
+            String patientId = patient.getId().toString();
+            rows.add(insertArgs(createdEvent(patient)));
+            rows.add(insertArgs(billingAccountEvent(patientId, patient.getName(), patient.getEmail())));
+        }
+        jdbcTemplate.batchUpdate(INSERT_OUTBOX_SQL, rows);
+    }
+
+    private OutboxEvent createdEvent(Patient patient) {
+        return new OutboxEvent(
+                patient.getId().toString(),
+                KafkaProducer.EVENT_TYPE_PATIENT_CREATED,
+                kafkaProducer.getPatientEventsTopic(),
+                kafkaProducer.buildPatientEvent(patient, KafkaProducer.EVENT_TYPE_PATIENT_CREATED).toByteArray());
+    }
+
+    private OutboxEvent billingAccountEvent(String patientId, String name, String email) {
+        return new OutboxEvent(
+                patientId,
+                KafkaProducer.BILLING_ACCOUNT_CREATE_REQUESTED,
+                KafkaProducer.BILLING_ACCOUNT_TOPIC,
+                kafkaProducer.buildBillingAccountEvent(patientId, name, email).toByteArray());
+    }
+
+    private static Object[] insertArgs(OutboxEvent event) {
+        return new Object[]{
+                event.getAggregateId(),
+                event.getEventType(),
+                event.getTopic(),
+                event.getPayload(),
+                event.getCreatedAt()
+        };
+    }
+}
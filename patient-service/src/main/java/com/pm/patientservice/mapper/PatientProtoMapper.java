@@ -0,0 +1,68 @@
+package com.pm.patientservice.mapper;
+
+import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import patient.dto.PagedPatientResponse;
+import patient.dto.PatientResponse;
+
+/**
+ * Maps the response DTOs to and from their protobuf mirrors in {@code patient_dto.proto}.
+ */
+public class PatientProtoMapper {
+
+    public static PatientResponse toProto(PatientResponseDTO dto) {
+        PatientResponse.Builder builder = PatientResponse.newBuilder();
+        if (dto.getId() != null) {
+            builder.setId(dto.getId());
+        }
+        if (dto.getName() != null) {
+            builder.setName(dto.getName());
+        }
+        if (dto.getEmail() != null) {
+            builder.setEmail(dto.getEmail());
+        }
+        if (dto.getAddress() != null) {
+            builder.setAddress(dto.getAddress());
+        }
+        if (dto.getDateOfBirth() != null) {
+            builder.setDateOfBirth(dto.getDateOfBirth());
+        }
+        if (dto.getVersion() != null) {
+            builder.setVersion(dto.getVersion());
+        }
+        return builder.build();
+    }
+
+    public static PatientResponseDTO fromProto(PatientResponse message) {
+        PatientResponseDTO dto = new PatientResponseDTO();
+        dto.setId(message.hasId() ? message.getId() : null);
+        dto.setName(message.hasName() ? message.getName() : null);
+        dto.setEmail(message.hasEmail() ? message.getEmail() : null);
+        dto.setAddress(message.hasAddress() ? message.getAddress() : null);
+        dto.setDateOfBirth(message.hasDateOfBirth() ? message.getDateOfBirth() : null);
+        dto.setVersion(message.hasVersion() ? message.getVersion() : null);
+        return dto;
+    }
+
+    public static PagedPatientResponse toProto(PagedPatientResponseDto dto) {
+        PagedPatientResponse.Builder builder = PagedPatientResponse.newBuilder()
+                .setTotalPages(dto.getTotalPages())
+                .setTotalElements(dto.getTotalElements())
+                .setPageNumber(dto.getPageNumber())
+                .setPageSize(dto.getPageSize());
+        if (dto.getPatients() != null) {
+            dto.getPatients().forEach(patient -> builder.addPatients(toProto(patient)));
+        }
+        return builder.build();
+    }
+
+    public static PagedPatientResponseDto fromProto(PagedPatientResponse message) {
+        return PagedPatientResponseDto.builder()
+                .patients(message.getPatientsList().stream().map(PatientProtoMapper::fromProto).toList())
+                .totalPages(message.getTotalPages())
+                .totalElements(message.getTotalElements())
+                .pageNumber(message.getPageNumber())
+                .pageSize(message.getPageSize())
+                .build();
+    }
+}
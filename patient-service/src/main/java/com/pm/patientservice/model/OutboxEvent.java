@@ -0,0 +1,101 @@
+package com.pm.patientservice.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A Kafka record waiting in the transactional outbox (table {@code patient_outbox}).
+ * <p>
+ * Rows are written in the same transaction as the patient change they describe, so an
+ * event exists if and only if its change was committed. The relay publishes unpublished
+ * rows in id order and stamps {@code publishedAt} once Kafka has acknowledged them.
+ *
+ * Fields in this class:
+ * - id: Insert order of the event, assigned by the database sequence.
+ * - aggregateId: Record key, the patient ID, so events of a patient stay on one partition.
+ * - eventType: Event type carried in the payload, kept in clear for troubleshooting.
+ * - topic: Kafka topic the payload is published to.
+ * - payload: Serialized protobuf event.
+ * - createdAt: When the event was written.
+ * - publishedAt: When Kafka acknowledged the event, null while it is pending.
+ * - deliverAfter: Not relayed before then, null to relay right away. A billing account
+ *   request waits while the direct call it backs up is in flight.
+ */
+@Entity
+@Table(name = "patient_outbox")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String aggregateId;
+
+    @Column(nullable = false)
+    private String eventType;
+
+    @Column(nullable = false)
+    private String topic;
+
+    @Column(nullable = false)
+    private byte[] payload;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime publishedAt;
+
+    private LocalDateTime deliverAfter;
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(String aggregateId, String eventType, String topic, byte[] payload) {
+        this.aggregateId = aggregateId;
+        this.eventType = eventType;
+        this.topic = topic;
+        this.payload = payload;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getAggregateId() {
+        return aggregateId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getPublishedAt() {
+        return publishedAt;
+    }
+
+    public void setPublishedAt(LocalDateTime publishedAt) {
+        this.publishedAt = publishedAt;
+    }
+
+    public LocalDateTime getDeliverAfter() {
+        return deliverAfter;
+    }
+
+    public void setDeliverAfter(LocalDateTime deliverAfter) {
+        this.deliverAfter = deliverAfter;
+    }
+}
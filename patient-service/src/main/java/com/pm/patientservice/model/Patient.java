@@ -4,7 +4,9 @@ import com.pm.patientservice.dto.validators.CreatePatientValidationGroup;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.UpdateTimestamp;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -16,13 +18,16 @@ import java.util.UUID;
  * and registration date.
  *
  * Fields in this class:
- * - id: Unique identifier for the patient (UUID).
+ * - id: Unique identifier for the patient, a time-ordered UUID assigned on insert.
  * - name: Full name of the patient (cannot be null).
  * - email: Email address of the patient, must be unique and valid (cannot be null).
  * - phone: Contact phone number of the patient (cannot be null).
  * - address: Residential address of the patient (cannot be null).
  * - dateOfBirth: Date of birth of the patient (cannot be null).
  * - registeredDate: Date and time when the patient was registered in the system (cannot be null).
+ * - version: Optimistic lock version, incremented on every update; the ETag of the patient.
+ * - updatedAt: When the patient was last created or updated, set by Hibernate on every write
+ *   (and by the column default for rows inserted with plain SQL).
  *
  * This class includes no-argument constructors, getter, and setter methods for
  * each field, allowing for encapsulation and controlled access to the entity data.
@@ -30,7 +35,7 @@ import java.util.UUID;
 @Entity
 public class Patient {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TimeOrderedUuid
     private UUID id;
 
     @NotNull
@@ -50,6 +55,12 @@ public class Patient {
     @NotNull(groups = CreatePatientValidationGroup.class,message = "Registration date is required")
     private LocalDateTime registeredDate;
 
+    @Version
+    private Long version;
+
+    @UpdateTimestamp
+    private Instant updatedAt;
+
     public Patient() {
     }
 
@@ -100,4 +111,20 @@ public class Patient {
     public void setRegisteredDate(LocalDateTime registeredDate) {
         this.registeredDate = registeredDate;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
 }
@@ -0,0 +1,47 @@
+package com.pm.patientservice.pagination;
+
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque continuation token for keyset pagination over the patient table.
+ * <p>
+ * It carries the sort field and direction of the listing plus the sort value and id of
+ * the last patient returned, so the next page can be fetched with a seek predicate
+ * {@code (sortField, id) > (lastValue, lastId)} instead of an OFFSET.
+ * <p>
+ * Encoded as URL-safe base64 of {@code field|direction|id|value}; the value goes last
+ * because it is free text.
+ */
+public record PatientCursor(PatientSortField sortField, Sort.Direction direction, Comparable<?> lastValue, UUID lastId) {
+
+    public String encode() {
+        String raw = sortField.getAttribute() + "|" + direction.name() + "|" + lastId + "|" + lastValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+     */
+    public static PatientCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            PatientSortField sortField = PatientSortField.fromAttribute(parts[0]);
+            return new PatientCursor(
+                    sortField,
+                    Sort.Direction.fromString(parts[1]),
+                    sortField.parse(parts[3]),
+                    UUID.fromString(parts[2]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.pm.patientservice.pagination;
+
+import com.pm.patientservice.model.Patient;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.function.Function;
+
+/**
+ * Columns a patient listing can be sorted and seeked on in cursor mode.
+ * Each field knows how to read its value from a {@link Patient} and how to parse it back
+ * from the string stored in a {@link PatientCursor}.
+ * <p>
+ * Every field has a matching {@code (column, id)} index, see data.sql.
+ */
+public enum PatientSortField {
+    NAME("name", "name", Patient::getName, value -> value),
+    EMAIL("email", "email", Patient::getEmail, value -> value),
+    ADDRESS("address", "address", Patient::getAddress, value -> value),
+    DATE_OF_BIRTH("dateOfBirth", "date_of_birth", Patient::getDateOfBirth, LocalDate::parse),
+    REGISTERED_DATE("registeredDate", "registered_date", Patient::getRegisteredDate, LocalDateTime::parse);
+
+    private final String attribute;
+    private final String column;
+    private final Function<Patient, Comparable<?>> extractor;
+    private final Function<String, Comparable<?>> parser;
+
+    PatientSortField(String attribute,
+                     String column,
+                     Function<Patient, Comparable<?>> extractor,
+                     Function<String, Comparable<?>> parser) {
+        this.attribute = attribute;
+        this.column = column;
+        this.extractor = extractor;
+        this.parser = parser;
+    }
+
+    /**
+     * @return the entity attribute, which is also the value clients pass as {@code sortField}
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * @return the database column, for native queries
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    public Comparable<?> valueOf(Patient patient) {
+        return extractor.apply(patient);
+    }
+
+    public Comparable<?> parse(String value) {
+        return parser.apply(value);
+    }
+
+    public static PatientSortField fromAttribute(String attribute) {
+        for (PatientSortField field : values()) {
+            if (field.attribute.equalsIgnoreCase(attribute)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported sort field : " + attribute);
+    }
+}
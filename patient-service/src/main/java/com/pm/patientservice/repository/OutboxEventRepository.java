@@ -0,0 +1,48 @@
+package com.pm.patientservice.repository;
+
+import com.pm.patientservice.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for the transactional outbox, see {@link OutboxEvent}.
+ * All methods must run inside a transaction.
+ */
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * @return the pending rows due at {@code now}, in id order
+     */
+    @Query(value = "SELECT * FROM patient_outbox WHERE published_at IS NULL"
+            + " AND (deliver_after IS NULL OR deliver_after <= :now) ORDER BY id LIMIT :limit",
+            nativeQuery = true)
+    List<OutboxEvent> findUnpublished(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("update OutboxEvent e set e.publishedAt = :publishedAt where e.id in :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("publishedAt") LocalDateTime publishedAt);
+
+    /**
+     * Lets the relay publish a held row at its next run.
+     */
+    @Modifying
+    @Query("update OutboxEvent e set e.deliverAfter = null where e.id = :id and e.publishedAt is null")
+    int release(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from OutboxEvent e where e.publishedAt < :before")
+    int deletePublishedBefore(@Param("before") LocalDateTime before);
+
+    long countByPublishedAtIsNull();
+
+    @Query("select min(e.createdAt) from OutboxEvent e where e.publishedAt is null")
+    LocalDateTime findOldestUnpublishedCreatedAt();
+}
@@ -0,0 +1,35 @@
+package com.pm.patientservice.repository;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Tells the constraint violations of the patient table apart, so that only a taken email
+ * is reported as one.
+ */
+public final class PatientConstraints {
+    // SQLState of a unique violation, the same in PostgreSQL and H2
+    private static final String UNIQUE_VIOLATION = "23505";
+    // "patient_email_key" in data.sql; H2 names the column in its message instead
+    private static final String EMAIL = "email";
+
+    private PatientConstraints() {
+    }
+
+    /**
+     * @return whether {@code e} is a violation of the unique index on the email
+     */
+    public static boolean isEmailTaken(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null) {
+                String message = sqlException.getMessage();
+                return UNIQUE_VIOLATION.equals(sqlException.getSQLState())
+                        && message != null
+                        && message.toLowerCase(Locale.ROOT).contains(EMAIL);
+            }
+        }
+        return false;
+    }
+}
@@ -1,11 +1,17 @@
 package com.pm.patientservice.repository;
 
 import com.pm.patientservice.model.Patient;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -20,13 +26,24 @@ import java.util.UUID;
  * common database operations, such as saving, deleting, and finding entities.
  */
 @Repository
-public interface PatientRepository extends JpaRepository<Patient, UUID> {
+public interface PatientRepository extends JpaRepository<Patient, UUID>, PatientRepositoryCustom {
     boolean existsByEmail(String email);
     boolean existsByEmailAndIdNot(String email, UUID id);
+
+    @Query("select p.email from Patient p where p.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
     Page<Patient> findByNameContainingIgnoreCase(String name, Pageable pageable);
     Page<Patient> findByAddressContainingIgnoreCase(String address, Pageable pageable);
 
     Page<Patient> findByEmailContainingIgnoreCase(String email, Pageable pageable);
 
+    /**
+     * Keyset page of the patients written after {@code (updatedAt, id)}, in write order.
+     */
+    @Query("select p from Patient p where p.updatedAt > :updatedAt or (p.updatedAt = :updatedAt and p.id > :id) "
+            + "order by p.updatedAt, p.id")
+    List<Patient> findChangedAfter(@Param("updatedAt") Instant updatedAt, @Param("id") UUID id, Limit limit);
+
 
 }
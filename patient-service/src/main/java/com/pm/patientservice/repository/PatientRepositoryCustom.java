@@ -0,0 +1,37 @@
+package com.pm.patientservice.repository;
+
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.pagination.PatientSortField;
+import com.pm.patientservice.search.PatientSearchField;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Custom query fragment of {@link PatientRepository} for queries that can't be expressed
+ * as derived query methods.
+ */
+public interface PatientRepositoryCustom {
+
+    /**
+     * Keyset (seek) pagination: returns up to {@code limit} patients ordered by
+     * {@code (sortField, id)} that come strictly after {@code (lastValue, lastId)} in the
+     * given direction. With a null {@code lastValue} the first page is returned.
+     */
+    List<Patient> findPageAfter(PatientSortField sortField, Sort.Direction direction,
+                                Comparable<?> lastValue, UUID lastId, int limit);
+
+    /**
+     * Case-insensitive substring search on one column, served by the trigram index on
+     * {@code lower(column)} instead of a sequential scan.
+     * <p>
+     * With a null {@code sortField} results are ranked by trigram similarity to the search
+     * value, otherwise they are ordered by {@code (sortField, id)} in the given direction.
+     * Only the page and size of {@code pageable} are used.
+     */
+    Page<Patient> search(PatientSearchField searchField, String searchValue,
+                         PatientSortField sortField, Sort.Direction direction, Pageable pageable);
+}
@@ -0,0 +1,110 @@
+package com.pm.patientservice.repository;
+
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.pagination.PatientSortField;
+import com.pm.patientservice.search.PatientSearchField;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link PatientRepositoryCustom}, picked up by Spring Data through the
+ * {@code Impl} suffix.
+ * <p>
+ * Both methods only read, like the inherited finders they run in a read-only transaction,
+ * which in read replica mode sends them to a replica.
+ */
+@Transactional(readOnly = true)
+public class PatientRepositoryImpl implements PatientRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<Patient> findPageAfter(PatientSortField sortField, Sort.Direction direction,
+                                       Comparable<?> lastValue, UUID lastId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Patient> query = cb.createQuery(Patient.class);
+        Root<Patient> root = query.from(Patient.class);
+
+        Path<Comparable> sortPath = root.get(sortField.getAttribute());
+        Path<UUID> idPath = root.get("id");
+        boolean ascending = direction.isAscending();
+
+        if (lastValue != null) {
+            Comparable value = lastValue;
+            // (sortField, id) > (value, lastId), with a plain range on sortField first so the
+            // (sortField, id) index is entered at the cursor instead of filtered from the start
+            Predicate range = ascending
+                    ? cb.greaterThanOrEqualTo(sortPath, value)
+                    : cb.lessThanOrEqualTo(sortPath, value);
+            Predicate after = ascending
+                    ? cb.greaterThan(sortPath, value)
+                    : cb.lessThan(sortPath, value);
+            Predicate tieBreak = cb.and(
+                    cb.equal(sortPath, value),
+                    ascending ? cb.greaterThan(idPath, lastId) : cb.lessThan(idPath, lastId));
+            query.where(range, cb.or(after, tieBreak));
+        }
+
+        query.orderBy(
+                ascending ? cb.asc(sortPath) : cb.desc(sortPath),
+                ascending ? cb.asc(idPath) : cb.desc(idPath));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Page<Patient> search(PatientSearchField searchField, String searchValue,
+                                PatientSortField sortField, Sort.Direction direction, Pageable pageable) {
+        String term = searchValue.toLowerCase(Locale.ROOT);
+        // column names come from the enums, never from the request
+        String column = searchField.getColumn();
+        String where = " WHERE lower(p." + column + ") LIKE :pattern ESCAPE '\\'";
+
+        String orderBy;
+        if (sortField == null) {
+            orderBy = " ORDER BY similarity(lower(p." + column + "), :term) DESC, p.id";
+        } else {
+            String dir = direction.isAscending() ? " ASC" : " DESC";
+            orderBy = " ORDER BY p." + sortField.getColumn() + dir + ", p.id" + dir;
+        }
+
+        Query query = entityManager.createNativeQuery("SELECT p.* FROM patient p" + where + orderBy, Patient.class)
+                .setParameter("pattern", "%" + escapeLike(term) + "%")
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize());
+        if (sortField == null) {
+            query.setParameter("term", term);
+        }
+        List<Patient> content = query.getResultList();
+
+        // the count only runs when the page alone can't tell the total
+        return PageableExecutionUtils.getPage(content, pageable, () -> ((Number) entityManager
+                .createNativeQuery("SELECT count(*) FROM patient p" + where)
+                .setParameter("pattern", "%" + escapeLike(term) + "%")
+                .getSingleResult()).longValue());
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
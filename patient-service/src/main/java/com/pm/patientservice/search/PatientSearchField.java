@@ -0,0 +1,33 @@
+package com.pm.patientservice.search;
+
+/**
+ * Patient columns that support substring search. Each one has a trigram GIN index on
+ * {@code lower(column)}, see data.sql.
+ */
+public enum PatientSearchField {
+    NAME("name"),
+    ADDRESS("address"),
+    EMAIL("email");
+
+    private final String column;
+
+    PatientSearchField(String column) {
+        this.column = column;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the matching field, or null when the field is not searchable
+     */
+    public static PatientSearchField fromParameter(String parameter) {
+        for (PatientSearchField field : values()) {
+            if (field.column.equalsIgnoreCase(parameter)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
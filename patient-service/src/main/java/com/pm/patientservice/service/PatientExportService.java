@@ -0,0 +1,150 @@
+package com.pm.patientservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Full patient table export used by {@code GET /patients/export}.
+ * <p>
+ * Rows are read through a forward-only JDBC cursor: the query runs inside a read-only
+ * transaction (the PostgreSQL driver only streams with auto-commit off) with a fetch
+ * size, so the driver holds one fetch of rows at a time. Each row is written straight
+ * to the response as it is read, without building entities or DTO lists, so heap use
+ * stays flat no matter how many rows are exported.
+ */
+@Service
+public class PatientExportService {
+    private static final Logger log = LoggerFactory.getLogger(PatientExportService.class);
+
+    private static final String EXPORT_SQL = "SELECT id, name, email, address, date_of_birth FROM patient";
+    private static final String CSV_HEADER = "id,name,email,address,dateOfBirth";
+
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    public PatientExportService(DataSource dataSource,
+                                PlatformTransactionManager transactionManager,
+                                ObjectMapper objectMapper) {
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Writes every patient to {@code output}, as NDJSON (one object per line with the fields of
+     * {@code PatientResponseDTO}) or as CSV with a header row.
+     *
+     * @param csv       true for CSV, false for NDJSON
+     * @param fetchSize the number of rows the driver fetches per round trip
+     * @param output    the response body
+     */
+    public void exportPatients(boolean csv, int fetchSize, OutputStream output) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+
+        long rows = transactionTemplate.execute(status -> {
+            try {
+                return csv
+                        ? exportCsv(jdbcTemplate, fetchSize, output)
+                        : exportNdjson(jdbcTemplate, fetchSize, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        log.info("Exported {} patients as {}", rows, csv ? "CSV" : "NDJSON");
+    }
+
+    private long exportNdjson(JdbcTemplate jdbcTemplate, int fetchSize, OutputStream output) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+        // objects are separated by the newline written after each one
+        generator.setRootValueSeparator(null);
+        long[] count = {0};
+
+        jdbcTemplate.query(EXPORT_SQL, (RowCallbackHandler) rs -> {
+            try {
+                generator.writeStartObject();
+                generator.writeStringField("id", rs.getString("id"));
+                generator.writeStringField("name", rs.getString("name"));
+                generator.writeStringField("email", rs.getString("email"));
+                generator.writeStringField("address", rs.getString("address"));
+                generator.writeStringField("dateOfBirth", rs.getString("date_of_birth"));
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+                flushEvery(fetchSize, ++count[0], generator);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        generator.flush();
+        return count[0];
+    }
+
+    private long exportCsv(JdbcTemplate jdbcTemplate, int fetchSize, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        long[] count = {0};
+
+        jdbcTemplate.query(EXPORT_SQL, (RowCallbackHandler) rs -> {
+            try {
+                writeCsvRow(writer, rs);
+                flushEvery(fetchSize, ++count[0], writer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+        return count[0];
+    }
+
+    private static void writeCsvRow(Writer writer, ResultSet rs) throws IOException, SQLException {
+        writer.write(rs.getString("id"));
+        writer.write(',');
+        writer.write(csvField(rs.getString("name")));
+        writer.write(',');
+        writer.write(csvField(rs.getString("email")));
+        writer.write(',');
+        writer.write(csvField(rs.getString("address")));
+        writer.write(',');
+        writer.write(rs.getString("date_of_birth"));
+        writer.write('\n');
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // pushes a fetch worth of rows to the client so it sees progress while the cursor advances
+    private static void flushEvery(int fetchSize, long count, Flushable flushable) throws IOException {
+        if (count % fetchSize == 0) {
+            flushable.flush();
+        }
+    }
+}
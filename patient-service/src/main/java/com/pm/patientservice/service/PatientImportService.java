@@ -0,0 +1,345 @@
+package com.pm.patientservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.patientservice.bloom.PatientEmailFilter;
+import com.pm.patientservice.cache.CacheGeneration;
+import com.pm.patientservice.dto.PatientImportResultDTO;
+import com.pm.patientservice.dto.PatientRequestDTO;
+import com.pm.patientservice.dto.validators.CreatePatientValidationGroup;
+import com.pm.patientservice.kafka.PatientEventOutbox;
+import com.pm.patientservice.mapper.PatientMapper;
+import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.model.TimeOrderedUuidGenerator;
+import com.pm.patientservice.repository.PatientConstraints;
+import com.pm.patientservice.repository.PatientRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.validation.groups.Default;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk patient import used by {@code POST /patients/bulk}.
+ * <p>
+ * The upload (NDJSON, or CSV with a header row) is read line by line and processed in
+ * chunks of {@code patient.import.chunk-size} rows, so memory stays bounded whatever
+ * the file size. For each chunk:
+ * <ul>
+ *   <li>rows are validated with the same rules as {@code POST /patients};</li>
+ *   <li>emails are checked with one {@code IN} query for the whole chunk, limited to the
+ *   emails the {@link PatientEmailFilter} can't rule out, plus a check for duplicates
+ *   inside the chunk itself;</li>
+ *   <li>new patients are written with a single JDBC batch insert in one transaction;</li>
+ *   <li>in the same transaction, billing account requests and patient created events are
+ *   batch inserted into the outbox, which the relay publishes to Kafka. Billing accounts
+ *   go through the "billing-account" topic consumed by billing-service instead of one
+ *   blocking gRPC call per patient.</li>
+ * </ul>
+ * One {@link PatientImportResultDTO} line per input row is written back as each chunk completes.
+ */
+@Service
+public class PatientImportService {
+    private static final Logger log = LoggerFactory.getLogger(PatientImportService.class);
+
+    private static final String INSERT_PATIENT_SQL =
+            "INSERT INTO patient (id, name, email, address, date_of_birth, registered_date) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final List<String> CSV_COLUMNS =
+            List.of("name", "email", "address", "dateOfBirth", "registrationDate");
+
+    private final PatientRepository patientRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final PatientEventOutbox patientEventOutbox;
+    private final CacheGeneration patientsCacheGeneration;
+    private final PatientEmailFilter patientEmailFilter;
+
+    @Value("${patient.import.chunk-size:500}")
+    int chunkSize;
+
+    public PatientImportService(PatientRepository patientRepository,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                Validator validator,
+                                ObjectMapper objectMapper,
+                                PatientEventOutbox patientEventOutbox,
+                                CacheGeneration patientsCacheGeneration,
+                                PatientEmailFilter patientEmailFilter) {
+        this.patientRepository = patientRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.patientEventOutbox = patientEventOutbox;
+        this.patientsCacheGeneration = patientsCacheGeneration;
+        this.patientEmailFilter = patientEmailFilter;
+    }
+
+    /**
+     * Imports every row of {@code input} and writes one result line per row to {@code output}.
+     *
+     * @param input  the uploaded file
+     * @param csv    true for CSV with a header row, false for NDJSON
+     * @param output where the NDJSON result lines are written
+     */
+    public void importPatients(InputStream input, boolean csv, OutputStream output) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        Map<String, Integer> header = null;
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        int lineNumber = 0;
+        int created = 0;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (csv && header == null) {
+                Map<String, Integer> columns = parseCsvHeader(line);
+                List<String> missing = CSV_COLUMNS.stream().filter(column -> !columns.containsKey(column)).toList();
+                if (!missing.isEmpty()) {
+                    writeResult(writer, PatientImportResultDTO.rejected(lineNumber, "Missing CSV columns : " + missing));
+                    writer.flush();
+                    return;
+                }
+                header = columns;
+                continue;
+            }
+
+            chunk.add(parseRow(lineNumber, line, header));
+            if (chunk.size() == chunkSize) {
+                created += processChunk(chunk, writer);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            created += processChunk(chunk, writer);
+        }
+        writer.flush();
+        log.info("Bulk import finished : {} lines read, {} patients created", lineNumber, created);
+    }
+
+    private ImportRow parseRow(int lineNumber, String line, Map<String, Integer> csvHeader) {
+        PatientRequestDTO request;
+        try {
+            request = csvHeader != null
+                    ? fromCsv(parseCsvLine(line), csvHeader)
+                    : objectMapper.readValue(line, PatientRequestDTO.class);
+        } catch (Exception e) {
+            return ImportRow.rejected(lineNumber, "Unreadable row : " + e.getMessage());
+        }
+
+        Set<ConstraintViolation<PatientRequestDTO>> violations =
+                validator.validate(request, Default.class, CreatePatientValidationGroup.class);
+        if (!violations.isEmpty()) {
+            return ImportRow.rejected(lineNumber, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+
+        try {
+            return new ImportRow(lineNumber, PatientMapper.toPatientEntity(request));
+        } catch (IllegalArgumentException e) {
+            return ImportRow.rejected(lineNumber, e.getMessage());
+        }
+    }
+
+    /**
+     * Dedupes, inserts and publishes one chunk, then writes its results in input order.
+     *
+     * @return the number of patients created
+     */
+    private int processChunk(List<ImportRow> chunk, Writer writer) throws IOException {
+        Set<String> emails = new HashSet<>();
+        for (ImportRow row : chunk) {
+            if (row.patient != null && !emails.add(row.patient.getEmail())) {
+                row.reject("Duplicate email in import : " + row.patient.getEmail());
+            }
+        }
+
+        // new emails are mostly ruled out by the filter, only the rest is looked up
+        Set<String> candidates = emails.stream().filter(patientEmailFilter::mightExist).collect(Collectors.toSet());
+        if (!candidates.isEmpty()) {
+            Set<String> existing = new HashSet<>(patientRepository.findExistingEmails(candidates));
+            candidates.forEach(email -> patientEmailFilter.recordChecked(existing.contains(email)));
+            for (ImportRow row : chunk) {
+                if (row.patient != null && existing.contains(row.patient.getEmail())) {
+                    row.reject("Patient with this email exist : " + row.patient.getEmail());
+                }
+            }
+        }
+
+        List<ImportRow> toInsert = chunk.stream().filter(row -> row.patient != null).toList();
+        List<ImportRow> inserted = insert(toInsert);
+        inserted.forEach(row -> patientEmailFilter.put(row.patient.getEmail()));
+
+        for (ImportRow row : chunk) {
+            writeResult(writer, row.patient != null
+                    ? PatientImportResultDTO.created(row.lineNumber, row.patient.getId().toString())
+                    : PatientImportResultDTO.rejected(row.lineNumber, row.error));
+        }
+        writer.flush();
+        return inserted.size();
+    }
+
+    private List<ImportRow> insert(List<ImportRow> rows) {
+        if (rows.isEmpty()) {
+            return rows;
+        }
+        rows.forEach(row -> row.patient.setId(TimeOrderedUuidGenerator.next()));
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_PATIENT_SQL, rows.stream().map(row -> insertArgs(row.patient)).toList());
+                patientEventOutbox.patientsImported(rows.stream().map(row -> row.patient).toList());
+                patientsCacheGeneration.bump();
+            });
+            return rows;
+        } catch (DataIntegrityViolationException e) {
+            // an email taken concurrently, or a row the validation let through: find them one by one
+            log.warn("Batch insert rejected by a constraint, retrying {} rows individually", rows.size());
+            List<ImportRow> inserted = new ArrayList<>();
+            for (ImportRow row : rows) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        jdbcTemplate.update(INSERT_PATIENT_SQL, insertArgs(row.patient));
+                        patientEventOutbox.patientsImported(List.of(row.patient));
+                        patientsCacheGeneration.bump();
+                    });
+                    inserted.add(row);
+                } catch (DataIntegrityViolationException rowException) {
+                    if (PatientConstraints.isEmailTaken(rowException)) {
+                        row.reject("Patient with this email exist : " + row.patient.getEmail());
+                    } else {
+                        log.warn("Import row {} rejected by a constraint", row.lineNumber, rowException);
+                        row.reject("Patient rejected by the database, check the field lengths and values");
+                    }
+                }
+            }
+            return inserted;
+        }
+    }
+
+    private static Object[] insertArgs(Patient patient) {
+        return new Object[]{
+                patient.getId(),
+                patient.getName(),
+                patient.getEmail(),
+                patient.getAddress(),
+                patient.getDateOfBirth(),
+                patient.getRegisteredDate()
+        };
+    }
+
+    private void writeResult(Writer writer, PatientImportResultDTO result) throws IOException {
+        writer.write(objectMapper.writeValueAsString(result));
+        writer.write('\n');
+    }
+
+    private static Map<String, Integer> parseCsvHeader(String line) {
+        List<String> columns = parseCsvLine(line);
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            header.put(columns.get(i).trim(), i);
+        }
+        return header;
+    }
+
+    private static PatientRequestDTO fromCsv(List<String> values, Map<String, Integer> header) {
+        PatientRequestDTO request = new PatientRequestDTO();
+        request.setName(csvValue(values, header, "name"));
+        request.setEmail(csvValue(values, header, "email"));
+        request.setAddress(csvValue(values, header, "address"));
+        request.setDateOfBirth(csvValue(values, header, "dateOfBirth"));
+        request.setRegistrationDate(csvValue(values, header, "registrationDate"));
+        return request;
+    }
+
+    private static String csvValue(List<String> values, Map<String, Integer> header, String column) {
+        int index = header.get(column);
+        return index < values.size() ? values.get(index) : null;
+    }
+
+    /**
+     * Splits one CSV record. Fields may be quoted to contain commas, a doubled quote inside
+     * a quoted field is a literal quote. Records can't span lines.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static final class ImportRow {
+        private final int lineNumber;
+        private Patient patient;
+        private String error;
+
+        private ImportRow(int lineNumber, Patient patient) {
+            this.lineNumber = lineNumber;
+            this.patient = patient;
+        }
+
+        private static ImportRow rejected(int lineNumber, String error) {
+            ImportRow row = new ImportRow(lineNumber, null);
+            row.error = error;
+            return row;
+        }
+
+        private void reject(String error) {
+            this.patient = null;
+            this.error = error;
+        }
+    }
+}
@@ -1,20 +1,35 @@
 package com.pm.patientservice.service;
 
+import com.pm.patientservice.bloom.PatientEmailFilter;
+import com.pm.patientservice.cache.CacheBatchOperations;
+import com.pm.patientservice.cache.CacheFillRouting;
+import com.pm.patientservice.cache.CacheGeneration;
+import com.pm.patientservice.cache.PatientSearchCache;
+import com.pm.patientservice.cache.PatientVersionCache;
+import com.pm.patientservice.dto.CursorPagedPatientResponseDto;
 import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientBatchGetResponseDTO;
 import com.pm.patientservice.dto.PatientRequestDTO;
 import com.pm.patientservice.dto.PatientResponseDTO;
 import com.pm.patientservice.exception.EmailAlreadyExistsException;
 import com.pm.patientservice.exception.PatientNotFoundException;
 import com.pm.patientservice.grpc.BillingServiceGrpcClient;
-import com.pm.patientservice.kafka.KafkaProducer;
+import com.pm.patientservice.kafka.PatientEventOutbox;
 import com.pm.patientservice.mapper.PatientMapper;
 import com.pm.patientservice.model.Patient;
+import com.pm.patientservice.pagination.PatientCursor;
+import com.pm.patientservice.pagination.PatientSortField;
+import com.pm.patientservice.repository.PatientConstraints;
 import com.pm.patientservice.repository.PatientRepository;
+import com.pm.patientservice.search.PatientSearchField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -24,8 +39,12 @@ import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Service class for managing patient-related operations.
@@ -45,15 +64,46 @@ import java.util.UUID;
 @Service
 public class PatientService {
     private static final Logger log = LoggerFactory.getLogger(PatientService.class);
+    private static final String SEARCH_MODE_TRIGRAM = "trigram";
+    private static final String SORT_RELEVANCE = "relevance";
+    private static final String DEFAULT_SORT_FIELD = "name";
     private final PatientRepository patientRepository;
     private final BillingServiceGrpcClient billingServiceGrpcClient;
-    private  final KafkaProducer kafkaProducer;
+    private final PatientEventOutbox patientEventOutbox;
+    private final CacheGeneration patientsCacheGeneration;
+    private final PatientSearchCache patientSearchCache;
+    private final PatientEmailFilter patientEmailFilter;
+    private final CacheManager cacheManager;
+    private final CacheBatchOperations cacheBatchOperations;
+    private final PatientVersionCache patientVersionCache;
+    private final CacheFillRouting cacheFillRouting;
     //private final StreamKafkaProducer streamKafkaProducer;
 
-    PatientService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient,KafkaProducer kafkaProducer) {
+    // "trigram" searches through the pg_trgm indexes, "like" keeps the derived LIKE queries
+    @Value("${patient.search.mode:trigram}")
+    String searchMode;
+
+    @Value("${patient.batch-get.max-ids:500}")
+    int batchGetMaxIds;
+
+    @Value("${patient.cursor.max-page-size:1000}")
+    int cursorMaxPageSize;
+
+    PatientService(PatientRepository patientRepository, BillingServiceGrpcClient billingServiceGrpcClient, PatientEventOutbox patientEventOutbox,
+                   CacheGeneration patientsCacheGeneration, PatientSearchCache patientSearchCache,
+                   PatientEmailFilter patientEmailFilter, CacheManager cacheManager,
+                   CacheBatchOperations cacheBatchOperations, PatientVersionCache patientVersionCache,
+                   CacheFillRouting cacheFillRouting) {
         this.patientRepository = patientRepository;
         this.billingServiceGrpcClient = billingServiceGrpcClient;
-        this.kafkaProducer = kafkaProducer;
+        this.patientEventOutbox = patientEventOutbox;
+        this.patientsCacheGeneration = patientsCacheGeneration;
+        this.patientSearchCache = patientSearchCache;
+        this.patientEmailFilter = patientEmailFilter;
+        this.cacheManager = cacheManager;
+        this.cacheBatchOperations = cacheBatchOperations;
+        this.patientVersionCache = patientVersionCache;
+        this.cacheFillRouting = cacheFillRouting;
        // this.streamKafkaProducer = streamKafkaProducer;
     }
 
@@ -77,14 +127,15 @@ public class PatientService {
      * @param page        the page number to retrieve (zero-based)
      * @param size        the number of items per page
      * @param sort        the sort direction ("asc" or "desc")
-     * @param sortField   the field to sort by
+     * @param sortField   the field to sort by, or "relevance" to rank search results by similarity
      * @param searchField the field to search in
      * @param searchValue the value to search for
      * @return a PagedPatientResponseDto containing the paginated list of patients
      */
+    // the generation prefix moves on every patient write, see CacheGeneration
     @Cacheable(
             value="patients",
-            key = "#page + '-' + #size + '-' + #sort + '-' + #sortField",
+            key = "@patientsCacheGeneration.current() + ':' + #page + '-' + #size + '-' + #sort + '-' + #sortField",
             condition = "#searchValue == ''"
     )
     public PagedPatientResponseDto getPatients(Integer page, Integer size, String sort, String sortField, String searchField, String searchValue) {
@@ -96,27 +147,45 @@ public class PatientService {
             log.error(e.getMessage());
         }*/
 
-        Pageable pageable = PageRequest.of(page - 1, size,
-                sort.equalsIgnoreCase("desc") ? Sort.by(sortField).descending()
-                        : Sort.by(sortField).ascending());
+        if (searchValue == null || searchValue.isBlank()) {
+            Pageable pageable = PageRequest.of(page - 1, size,
+                    sort.equalsIgnoreCase("desc") ? Sort.by(sortField).descending()
+                            : Sort.by(sortField).ascending());
+            // cached under the current generation, a replica may not have the write behind it yet
+            return toPagedResponse(cacheFillRouting.load(() -> patientRepository.findAll(pageable)));
+        }
 
-        Page<Patient> patientPage;
+        // searches are not in the Redis page cache, they go through the in-process search cache
+        PatientSearchCache.SearchKey searchKey = patientSearchCache.key(searchField, searchValue, sortField, sort);
+        PagedPatientResponseDto cached = patientSearchCache.get(searchKey, page, size);
+        if (cached != null) {
+            return cached;
+        }
 
-        if (searchValue == null || searchValue.isBlank()) {
-            patientPage = patientRepository.findAll(pageable);
-        } else {
-            patientPage = switch (searchField.toLowerCase()) {
-                case "name" -> patientRepository.findByNameContainingIgnoreCase(searchValue, pageable);
-                case "address" -> patientRepository.findByAddressContainingIgnoreCase(searchValue, pageable);
-                case "email" -> patientRepository.findByEmailContainingIgnoreCase(searchValue, pageable);
-                default -> Page.empty(pageable);
-            };
+        int window = patientSearchCache.getMaxCandidates();
+        if ((long) page * size > window) {
+            // past the matches the search cache keeps, only this page is read
+            PagedPatientResponseDto result = toPagedResponse(
+                    findMatches(page, size, sort, sortField, searchField, searchValue));
+            patientSearchCache.put(searchKey, page, size, result, null);
+            return result;
         }
 
+        // one read of the first matches covers the page, and is every match of a narrow query
+        Page<Patient> firstMatches = findMatches(1, window, sort, sortField, searchField, searchValue);
+        List<PatientResponseDTO> matches = firstMatches.getContent().stream()
+                .map(PatientMapper::toPatientResponseDTO)
+                .toList();
+        PagedPatientResponseDto result = PatientSearchCache.toPage(matches, firstMatches.getTotalElements(), page, size);
+        patientSearchCache.put(searchKey, page, size, result,
+                firstMatches.getTotalElements() <= window ? matches : null);
+        return result;
+    }
+
+    private static PagedPatientResponseDto toPagedResponse(Page<Patient> patientPage) {
         List<PatientResponseDTO> patientResponseDTOS = patientPage.getContent()
                 .stream().map(PatientMapper::toPatientResponseDTO).toList();
 
-
         return PagedPatientResponseDto.builder()
                 .patients(patientResponseDTOS)
                 .totalPages(patientPage.getTotalPages())
@@ -126,6 +195,100 @@ public class PatientService {
                 .build();
     }
 
+    /**
+     * Runs a search against the database, through the trigram indexes or the derived LIKE
+     * queries depending on {@code patient.search.mode}.
+     */
+    private Page<Patient> findMatches(int page, int size, String sort, String sortField,
+                                      String searchField, String searchValue) {
+        if (SEARCH_MODE_TRIGRAM.equalsIgnoreCase(searchMode)) {
+            return searchPatients(page, size, sort, sortField, searchField, searchValue);
+        }
+
+        // LIKE mode: derived queries, sequential scan per search; they have no similarity
+        // to rank by, relevance falls back to the default order
+        String orderBy = SORT_RELEVANCE.equalsIgnoreCase(sortField) ? DEFAULT_SORT_FIELD : sortField;
+        Pageable pageable = PageRequest.of(page - 1, size,
+                sort.equalsIgnoreCase("desc") ? Sort.by(orderBy).descending()
+                        : Sort.by(orderBy).ascending());
+        return switch (searchField.toLowerCase()) {
+            case "name" -> patientRepository.findByNameContainingIgnoreCase(searchValue, pageable);
+            case "address" -> patientRepository.findByAddressContainingIgnoreCase(searchValue, pageable);
+            case "email" -> patientRepository.findByEmailContainingIgnoreCase(searchValue, pageable);
+            default -> Page.empty(pageable);
+        };
+    }
+
+    /**
+     * Substring search through the trigram indexes.
+     * With {@code sortField = "relevance"} results are ranked by similarity to the search value,
+     * any other sort field orders the matches as in a normal listing.
+     */
+    private Page<Patient> searchPatients(int page, int size, String sort, String sortField,
+                                         String searchField, String searchValue) {
+        Pageable pageable = PageRequest.of(page - 1, size);
+        PatientSearchField field = PatientSearchField.fromParameter(searchField);
+        if (field == null) {
+            return Page.empty(pageable);
+        }
+
+        PatientSortField sortBy = SORT_RELEVANCE.equalsIgnoreCase(sortField)
+                ? null
+                : PatientSortField.fromAttribute(sortField);
+        Sort.Direction direction = sort.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC;
+
+        return patientRepository.search(field, searchValue, sortBy, direction, pageable);
+    }
+
+    /**
+     * Retrieves a page of patients in cursor (keyset) mode.
+     * Instead of an OFFSET the page is located with a seek predicate on {@code (sortField, id)},
+     * so fetching a deep page costs the same as fetching the first one, and no count query
+     * is run unless {@code withTotal} is set.
+     *
+     * @param cursor    the continuation token returned with the previous page, empty for the first page;
+     *                  it carries its own sort field and direction, which take precedence over the parameters
+     * @param size      the number of items per page, at most {@code patient.cursor.max-page-size}
+     * @param sort      the sort direction ("asc" or "desc") for the first page
+     * @param sortField the field to sort by for the first page
+     * @param withTotal whether to include the total number of patients
+     * @return a CursorPagedPatientResponseDto with the page and the cursor of the next page
+     */
+    @Transactional(readOnly = true)
+    public CursorPagedPatientResponseDto getPatientsAfter(String cursor, Integer size, String sort,
+                                                          String sortField, boolean withTotal) {
+        if (size == null || size < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        if (size > cursorMaxPageSize) {
+            throw new IllegalArgumentException("Page size must be at most " + cursorMaxPageSize);
+        }
+
+        PatientCursor after = cursor == null || cursor.isBlank()
+                ? new PatientCursor(PatientSortField.fromAttribute(sortField),
+                        sort.equalsIgnoreCase("desc") ? Sort.Direction.DESC : Sort.Direction.ASC, null, null)
+                : PatientCursor.decode(cursor);
+
+        // one extra row tells us whether there is a next page
+        List<Patient> patients = patientRepository.findPageAfter(
+                after.sortField(), after.direction(), after.lastValue(), after.lastId(), size + 1);
+
+        String nextCursor = null;
+        if (patients.size() > size) {
+            patients = patients.subList(0, size);
+            Patient last = patients.get(size - 1);
+            nextCursor = new PatientCursor(after.sortField(), after.direction(),
+                    after.sortField().valueOf(last), last.getId()).encode();
+        }
+
+        return CursorPagedPatientResponseDto.builder()
+                .patients(patients.stream().map(PatientMapper::toPatientResponseDTO).toList())
+                .nextCursor(nextCursor)
+                .pageSize(size)
+                .totalElements(withTotal ? patientRepository.count() : null)
+                .build();
+    }
+
     /**
      * Creates a new patient record in the system based on the provided details.
      * Maps the input data to a Patient entity, persists it, and returns the
@@ -137,88 +300,181 @@ public class PatientService {
      */
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = Exception.class,
             isolation = Isolation.READ_COMMITTED,noRollbackFor = PatientNotFoundException.class)
-    @CacheEvict(value = "patients", allEntries = true) // Evict all entries from "patients" cache
     public PatientResponseDTO createPatient(PatientRequestDTO patientRequestDTO){
-        boolean isPresent = patientRepository.existsByEmail(patientRequestDTO.getEmail());
+        String email = patientRequestDTO.getEmail();
+        if(patientEmailFilter.mightExist(email)){
+            boolean isPresent = patientRepository.existsByEmail(email);
+            patientEmailFilter.recordChecked(isPresent);
 
-        if(isPresent){
-            throw new EmailAlreadyExistsException("Patient with this email exist : " + patientRequestDTO.getEmail() + " choose different email");
+            if(isPresent){
+                throw emailAlreadyExists(email);
+            }
         }
 
-        Patient patient = patientRepository.save(PatientMapper.toPatientEntity(patientRequestDTO));
+        Patient patient = saveChecked(PatientMapper.toPatientEntity(patientRequestDTO));
 
         if(patient.getId() != null){
-            billingServiceGrpcClient.createBillingAccount(patient.getId().toString(),patient.getName(),patient.getEmail());
+            // queued in the outbox with the patient, billing-service is called after commit
+            billingServiceGrpcClient.createBillingAccountAsync(patient.getId().toString(),patient.getName(),patient.getEmail());
 
-            kafkaProducer.sendPatientCreatedEvent(patient);
+            // published by the outbox relay once this transaction commits
+            patientEventOutbox.patientCreated(patient);
             //streamKafkaProducer.sendPatientCreatedEvent(patient);
         }
 
+        // new generation for the "patients" cache once this transaction commits
+        patientsCacheGeneration.bump();
+        patientVersionCache.written(patient.getId().toString(), patient.getVersion());
+
         return PatientMapper.toPatientResponseDTO(patient);
     }
 
     /**
      * Updates an existing patient record.
      * The result of this method will update the corresponding entry in the "patientById" cache.
-     * It also evicts all entries from the "patients" cache (paginated list).
+     * It also moves the "patients" cache (paginated list) to a new generation.
      *
      * @param id                the ID of the patient to update
      * @param patientRequestDTO the data transfer object with updated patient details
      * @return a PatientResponseDTO representing the updated patient
      */
     @Transactional
-    @CacheEvict(value = "patients", allEntries = true) // Evict all entries from "patients" cache (paginated list)
     @CachePut(value = "patientById", key = "#id") // Update the specific entry in "patientById" cache
     public PatientResponseDTO updatePatient(UUID id, PatientRequestDTO patientRequestDTO){
         Patient patient = patientRepository.findById(id).orElseThrow(
                 () -> new PatientNotFoundException("Patient with id " + id + " not found")
         );
 
-        boolean isPresent = patientRepository.existsByEmailAndIdNot(patientRequestDTO.getEmail(),id);
+        // keeping one's own email needs no check
+        String email = patientRequestDTO.getEmail();
+        if(email != null && !email.equals(patient.getEmail()) && patientEmailFilter.mightExist(email)){
+            boolean isPresent = patientRepository.existsByEmailAndIdNot(email,id);
+            patientEmailFilter.recordChecked(isPresent);
 
-        if(isPresent){
-            throw new EmailAlreadyExistsException("Patient with this email exist : " + patientRequestDTO.getEmail() + " choose different email");
+            if(isPresent){
+                throw emailAlreadyExists(email);
+            }
         }
 
         Patient updatedPatient = PatientMapper.updatePatientEntity(patient, patientRequestDTO);
-        updatedPatient= patientRepository.save(updatedPatient);
+        updatedPatient= saveChecked(updatedPatient);
 
-        kafkaProducer.sendPatientUpdatedEvent(updatedPatient);
+        patientEventOutbox.patientUpdated(updatedPatient);
+        patientsCacheGeneration.bump();
+        // saveChecked flushed, the version is already incremented
+        patientVersionCache.written(id.toString(), updatedPatient.getVersion());
 
         return  PatientMapper.toPatientResponseDTO(updatedPatient);
     }
 
     /**
      * Retrieves a single patient by ID.
-     * The result of this method is cached.
+     * The result of this method is cached. With {@code sync} the load goes through the cache,
+     * which lets concurrent misses of one patient share a single query (see TwoTierCache).
      *
      * @param id the ID of the patient to retrieve
      * @return a PatientResponseDTO representing the patient
      * @throws PatientNotFoundException if the patient with the given ID is not found
      */
-    @Cacheable(value = "patientById", key = "#id")
+    @Cacheable(value = "patientById", key = "#id", sync = true)
     public PatientResponseDTO getPatientById(UUID id) {
         log.info("{REDIS} Cache miss for single patient - fetching from DB for ID: {}", id);
-        Patient patient = patientRepository.findById(id).orElseThrow(
+        Patient patient = cacheFillRouting.load(() -> patientRepository.findById(id)).orElseThrow(
                 () -> new PatientNotFoundException("Patient with id " + id + " not found")
         );
         return PatientMapper.toPatientResponseDTO(patient);
     }
 
+    /**
+     * Returns the version of a patient if it is cached, for answering a conditional GET
+     * without loading the patient.
+     *
+     * @return the version, or null if it isn't cached
+     */
+    public Long getCachedPatientVersion(UUID id) {
+        return patientVersionCache.get(id.toString());
+    }
+
+    /**
+     * Caches the version of a patient that was just read, unless a version is already cached.
+     */
+    public void rememberPatientVersion(UUID id, Long version) {
+        patientVersionCache.putIfAbsent(id.toString(), version);
+    }
+
+    /**
+     * Returns the version of the patient list as a whole, the generation of the "patients"
+     * cache, which moves on every patient write.
+     */
+    public long getPatientsVersion() {
+        return patientsCacheGeneration.current();
+    }
+
+    /**
+     * Retrieves many patients by ID at once.
+     * Hits come from the "patientById" cache, looked up with a single Redis MGET; the misses
+     * are loaded with one IN query and written back to the cache in one pipeline.
+     *
+     * @param ids the IDs of the patients to retrieve, duplicates are answered once
+     * @return the patients found in request order, and the IDs without a patient
+     */
+    public PatientBatchGetResponseDTO getPatientsByIds(List<UUID> ids) {
+        if (ids.size() > batchGetMaxIds) {
+            throw new IllegalArgumentException("At most " + batchGetMaxIds + " ids can be requested at once");
+        }
+        Set<UUID> uniqueIds = new LinkedHashSet<>(ids);
+
+        Map<UUID, PatientResponseDTO> found = cacheBatchOperations.getAll(
+                cacheManager.getCache("patientById"), uniqueIds, PatientResponseDTO.class,
+                missing -> cacheFillRouting.load(() -> patientRepository.findAllById(missing)).stream()
+                        .collect(Collectors.toMap(Patient::getId, PatientMapper::toPatientResponseDTO)));
+
+        List<String> notFound = uniqueIds.stream()
+                .filter(id -> !found.containsKey(id))
+                .map(UUID::toString)
+                .toList();
+        return new PatientBatchGetResponseDTO(List.copyOf(found.values()), notFound);
+    }
+
     /**
      * Deletes a patient record from the system.
-     * It evicts the specific entry from "patientById" cache and all entries from "patients" cache.
+     * It evicts the specific entry from "patientById" cache and moves the "patients" cache to a new generation.
      *
      * @param id the ID of the patient to delete
      */
     @Transactional
-    @CacheEvict(value = {"patients", "patientById"}, allEntries = true, key = "#id") // Evict from both caches
+    @CacheEvict(value = "patientById", key = "#id")
     public void deletePatient(UUID id){
         Patient patient = patientRepository.findById(id).orElseThrow(
                 () -> new PatientNotFoundException("Patient with id " + id + " not found")
         );
 
         patientRepository.delete(patient);
+        patientsCacheGeneration.bump();
+        patientVersionCache.written(id.toString(), null);
+    }
+
+    /**
+     * Saves and flushes, so an email taken since the check (by another request, or one the
+     * email filter ruled out wrongly) fails here on the unique constraint rather than at commit.
+     * Other constraint violations are passed on as they are.
+     */
+    private Patient saveChecked(Patient patient) {
+        try {
+            Patient saved = patientRepository.saveAndFlush(patient);
+            patientEmailFilter.put(saved.getEmail());
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            if (!PatientConstraints.isEmailTaken(e)) {
+                throw e;
+            }
+            patientEmailFilter.put(patient.getEmail());
+            throw emailAlreadyExists(patient.getEmail());
+        }
+    }
+
+    private static EmailAlreadyExistsException emailAlreadyExists(String email) {
+        return new EmailAlreadyExistsException("Patient with this email exist : " + email + " choose different email");
     }
 
 
@@ -6,8 +6,45 @@ CREATE TABLE IF NOT EXISTS patient
     email           VARCHAR(255) UNIQUE NOT NULL,
     address         VARCHAR(255)        NOT NULL,
     date_of_birth   DATE                NOT NULL,
-    registered_date DATE                NOT NULL
+    registered_date DATE                NOT NULL,
+    version         BIGINT              NOT NULL DEFAULT 0,
+    updated_at      TIMESTAMPTZ         NOT NULL DEFAULT now()
 );
+-- optimistic lock version, also the ETag of the patient
+ALTER TABLE patient ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+-- last write, the cursor of the gRPC change stream
+ALTER TABLE patient ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ NOT NULL DEFAULT now();
+CREATE INDEX IF NOT EXISTS idx_patient_updated_at_id ON patient (updated_at, id);
+
+-- (sort column, id) indexes backing the keyset pagination seek predicates
+-- email is unique, its unique index already serves (email, id)
+CREATE INDEX IF NOT EXISTS idx_patient_name_id ON patient (name, id);
+CREATE INDEX IF NOT EXISTS idx_patient_address_id ON patient (address, id);
+CREATE INDEX IF NOT EXISTS idx_patient_date_of_birth_id ON patient (date_of_birth, id);
+CREATE INDEX IF NOT EXISTS idx_patient_registered_date_id ON patient (registered_date, id);
+
+-- trigram indexes so substring search (LIKE '%x%') doesn't scan the table
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_patient_name_trgm ON patient USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_patient_address_trgm ON patient USING gin (lower(address) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_patient_email_trgm ON patient USING gin (lower(email) gin_trgm_ops);
+
+-- transactional outbox for patient events, drained in id order by the relay
+CREATE TABLE IF NOT EXISTS patient_outbox
+(
+    id            BIGSERIAL PRIMARY KEY,
+    aggregate_id  VARCHAR(255) NOT NULL,
+    event_type    VARCHAR(255) NOT NULL,
+    topic         VARCHAR(255) NOT NULL,
+    payload       BYTEA        NOT NULL,
+    created_at    TIMESTAMP    NOT NULL,
+    published_at  TIMESTAMP,
+    deliver_after TIMESTAMP
+);
+-- held back from the relay until then, while the direct call it backs up is in flight
+ALTER TABLE patient_outbox ADD COLUMN IF NOT EXISTS deliver_after TIMESTAMP;
+-- only pending rows are indexed, the relay's scan stays small as the table grows
+CREATE INDEX IF NOT EXISTS idx_patient_outbox_pending ON patient_outbox (id) WHERE published_at IS NULL;
 
 -- Insert well-known UUIDs for specific patients
 INSERT INTO patient (id, name, email, address, date_of_birth, registered_date)
@@ -0,0 +1,121 @@
+package com.pm.patientservice.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+    private static final long BASELINE = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long INFLATED = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private SimpleMeterRegistry meterRegistry;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new AdaptiveConcurrencyLimiter("test", 20, 5, 100, Duration.ZERO, meterRegistry);
+    }
+
+    @Test
+    void testLimitGrowsToMaxWhileLatencyStaysAtTheAverage() {
+        feed(BASELINE, 500);
+
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitShrinksToMinUnderInflatedLatency() {
+        feed(BASELINE, 500);
+
+        feed(INFLATED, 10);
+        int shrunk = limiter.getLimit();
+        assertTrue(shrunk < 100 && shrunk > 5, "limit " + shrunk);
+
+        feed(INFLATED, 90);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitGrowsBackOnceLatencyIsNearTheAverageAgain() {
+        feed(BASELINE, 500);
+        feed(INFLATED, 100);
+
+        feed(BASELINE, 50);
+        int recovering = limiter.getLimit();
+        assertTrue(recovering > 5 && recovering < 100, "limit " + recovering);
+
+        feed(BASELINE, 100);
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    void testLatencyLastingLongEnoughBecomesTheAverage() {
+        feed(BASELINE, 500);
+        feed(INFLATED, 100);
+
+        // the long-term average follows, and the same latency no longer counts as overload
+        feed(INFLATED, 1000);
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitIsNotRaisedByAFewRequestsInFlight() {
+        for (int i = 0; i < 500; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(BASELINE);
+        }
+
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void testRequestAtTheLimitIsRejectedAfterQueueWait() {
+        limiter = new AdaptiveConcurrencyLimiter("queued", 2, 2, 2, Duration.ofMillis(50), meterRegistry);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire());
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1.0, meterRegistry.get("patient.admission.queued").tag("class", "queued").counter().count());
+        assertEquals(1.0, meterRegistry.get("patient.admission.rejected").tag("class", "queued").counter().count());
+    }
+
+    @Test
+    void testQueuedRequestTakesAReleasedSlot() throws Exception {
+        limiter = new AdaptiveConcurrencyLimiter("queued", 1, 1, 1, Duration.ofSeconds(5), meterRegistry);
+        assertTrue(limiter.tryAcquire());
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            limiter.release(BASELINE);
+        });
+        releaser.start();
+
+        assertTrue(limiter.tryAcquire());
+        releaser.join();
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    // keeps the limiter full, so every sample counts, and completes one request per sample
+    private void feed(long rttNanos, int samples) {
+        for (int i = 0; i < samples; i++) {
+            while (limiter.getInFlight() < limiter.getLimit() && limiter.tryAcquire()) {
+                // fill the free slots
+            }
+            limiter.release(rttNanos);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.pm.patientservice.cache;
+
+import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Redis cache value serializers on cached patient pages: the typed JSON
+ * serializer, and the compact one with and without LZ4.
+ * <p>
+ * Reports encode and decode time (ns/op); the size of one encoded page per codec is
+ * printed at setup as "bytes per entry". Run from patient-service after
+ * {@code mvn test-compile}:
+ * <pre>
+ * java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" \
+ *     com.pm.patientservice.cache.CacheCodecBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    @Param({"json", "compact", "compact-lz4"})
+    public String codec;
+
+    @Param({"1", "10", "100"})
+    public int pageSize;
+
+    private RedisSerializer<Object> serializer;
+    private PagedPatientResponseDto page;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        serializer = switch (codec) {
+            case "json" -> RedisCacheConfig.jsonSerializer();
+            case "compact" -> RedisCacheConfig.compactSerializer(0);
+            case "compact-lz4" -> RedisCacheConfig.compactSerializer(256);
+            default -> throw new IllegalArgumentException(codec);
+        };
+        page = samplePage(pageSize);
+        encoded = serializer.serialize(page);
+        System.out.printf("%n[%s, pageSize=%d] bytes per entry: %d%n", codec, pageSize, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(page);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(encoded);
+    }
+
+    private static PagedPatientResponseDto samplePage(int size) {
+        List<PatientResponseDTO> patients = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PatientResponseDTO patient = new PatientResponseDTO();
+            patient.setId(UUID.nameUUIDFromBytes(("patient-" + i).getBytes()).toString());
+            patient.setName("Patient Number " + i);
+            patient.setEmail("patient" + i + "@example.com");
+            patient.setAddress(i + " Main Street, Springfield");
+            patient.setDateOfBirth("1985-06-" + String.format("%02d", 1 + i % 28));
+            patients.add(patient);
+        }
+        return PagedPatientResponseDto.builder()
+                .patients(patients)
+                .totalPages(1000)
+                .totalElements(1000 * size)
+                .pageNumber(1)
+                .pageSize(size)
+                .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,165 @@
+package com.pm.patientservice.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CacheStampedeGuardTest {
+    private static final long LOAD_NANOS = TimeUnit.SECONDS.toNanos(1000);
+    private static final int SAMPLES = 20_000;
+
+    // the lock keys in "Redis", SET NX and the unlock script act on it
+    private final Map<String, String> locks = new ConcurrentHashMap<>();
+    private SimpleMeterRegistry meterRegistry;
+    private CacheStampedeGuard guard;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenAnswer(invocation -> locks.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any()))
+                .thenAnswer(invocation -> {
+                    List<String> keys = invocation.getArgument(1);
+                    return locks.remove(keys.get(0), invocation.getArgument(2)) ? 1L : 0L;
+                });
+
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new CacheStampedeGuard("patients", redisTemplate, Duration.ofSeconds(3),
+                Duration.ofMillis(100), 1.0, meterRegistry);
+    }
+
+    @Test
+    void testOnlyOneConcurrentCallerTakesTheLock() throws Exception {
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        Set<String> tokens = ConcurrentHashMap.newKeySet();
+        AtomicInteger refused = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    String token = guard.tryLock("1");
+                    if (token != null) {
+                        tokens.add(token);
+                    } else {
+                        refused.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, tokens.size());
+        assertEquals(callers - 1, refused.get());
+        assertEquals(Map.of("patients::lock::1", tokens.iterator().next()), locks);
+    }
+
+    @Test
+    void testUnlockOnlyReleasesOwnLock() {
+        String token = guard.tryLock("1");
+        assertNotNull(token);
+
+        guard.unlock("1", "someone-else");
+        assertNull(guard.tryLock("1"));
+
+        guard.unlock("1", token);
+        assertNotNull(guard.tryLock("1"));
+    }
+
+    @Test
+    void testWaiterGetsTheLockHoldersValue() {
+        AtomicInteger polls = new AtomicInteger();
+
+        Object value = guard.awaitRemoteLoad(() -> polls.incrementAndGet() >= 2 ? "loaded" : null);
+
+        assertEquals("loaded", value);
+        assertEquals(1.0, meterRegistry.get("cache.stampede.lock.waits").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testWaiterGivesUpAfterLockWait() {
+        long start = System.nanoTime();
+
+        assertNull(guard.awaitRemoteLoad(() -> null));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1.0, meterRegistry.get("cache.stampede.lock.waits").tag("result", "timeout").counter().count());
+    }
+
+    @Test
+    void testNoEarlyRefreshWithoutLoadTimeOrExpiry() {
+        assertFalse(guard.shouldRefreshEarly(System.currentTimeMillis()));
+
+        guard.recordLoad(LOAD_NANOS);
+        assertFalse(guard.shouldRefreshEarly(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testExpiredEntryIsAlwaysRefreshed() {
+        guard.recordLoad(LOAD_NANOS);
+        long now = System.currentTimeMillis();
+
+        assertEquals(SAMPLES, refreshes(now));
+        assertEquals(SAMPLES, refreshes(now - 1000));
+    }
+
+    @Test
+    void testFarExpiryIsNeverRefreshed() {
+        guard.recordLoad(TimeUnit.MILLISECONDS.toNanos(1));
+
+        // -ln(u) of a double stays below 40, so the gap is under 40 ms here
+        assertEquals(0, refreshes(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+    }
+
+    @Test
+    void testRefreshProbabilityFollowsTheDistanceToExpiry() {
+        // with delta * beta = 1000 s, a read x * 1000 s before expiry refreshes with probability e^-x
+        guard.recordLoad(LOAD_NANOS);
+        long now = System.currentTimeMillis();
+
+        assertEquals(0.5, refreshes(now + Math.round(1_000_000 * Math.log(2))) / (double) SAMPLES, 0.03);
+        assertEquals(Math.exp(-3), refreshes(now + 3_000_000) / (double) SAMPLES, 0.01);
+    }
+
+    private int refreshes(long expiresAt) {
+        int refreshes = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            if (guard.shouldRefreshEarly(expiresAt)) {
+                refreshes++;
+            }
+        }
+        return refreshes;
+    }
+}
@@ -0,0 +1,93 @@
+package com.pm.patientservice.cache;
+
+import com.pm.patientservice.dto.PagedPatientResponseDto;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PatientSearchCacheTest {
+    private SimpleMeterRegistry meterRegistry;
+    private CacheGeneration generation;
+    private PatientSearchCache searchCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        generation = mock(CacheGeneration.class);
+        when(generation.current()).thenReturn(1L);
+        searchCache = new PatientSearchCache(generation, meterRegistry, Duration.ofMinutes(1), 100, 50, 1000);
+    }
+
+    @Test
+    void testLongerQueryIsFilteredFromShorterOneInItsOrder() {
+        cacheMatches("smi", "name", "desc", "Smitty", "Smith", "Osmin", "ASMITH");
+
+        PagedPatientResponseDto first = searchCache.get(searchCache.key("name", "Smit", "name", "desc"), 1, 2);
+        PagedPatientResponseDto second = searchCache.get(searchCache.key("name", "smit", "name", "desc"), 2, 2);
+
+        assertEquals(List.of("Smitty", "Smith"), names(first));
+        assertEquals(List.of("ASMITH"), names(second));
+        assertEquals(3, first.getTotalElements());
+        assertEquals(2, first.getTotalPages());
+        // the filtered list is cached for the longer query, the second page is a plain hit
+        assertEquals(1.0, requests("prefix_hit"));
+        assertEquals(1.0, requests("hit"));
+    }
+
+    @Test
+    void testRelevanceIsNotFilteredFromShorterQuery() {
+        cacheMatches("smi", "relevance", "desc", "Smith", "Smitty");
+
+        assertNull(searchCache.get(searchCache.key("name", "smit", "relevance", "desc"), 1, 10));
+        assertEquals(1.0, requests("miss"));
+    }
+
+    @Test
+    void testShorterQueryOfEarlierGenerationIsNotUsed() {
+        cacheMatches("smi", "name", "asc", "Smith", "Smitty");
+        when(generation.current()).thenReturn(2L);
+
+        assertNull(searchCache.get(searchCache.key("name", "smi", "name", "asc"), 1, 10));
+        assertNull(searchCache.get(searchCache.key("name", "smit", "name", "asc"), 1, 10));
+        assertEquals(2.0, requests("miss"));
+    }
+
+    @Test
+    void testLikeWildcardsInSearchValueMatchLiterally() {
+        // the database escapes them in a containing match, the filter has to agree
+        cacheMatches("a", "name", "asc", "Ann_Lee", "Anna Lee", "Ann%Lee", "Annie");
+
+        assertEquals(List.of("Ann_Lee"),
+                names(searchCache.get(searchCache.key("name", "ann_", "name", "asc"), 1, 10)));
+        assertEquals(List.of("Ann%Lee"),
+                names(searchCache.get(searchCache.key("name", "ann%", "name", "asc"), 1, 10)));
+    }
+
+    private void cacheMatches(String searchValue, String sortField, String sort, String... names) {
+        List<PatientResponseDTO> matches = Arrays.stream(names).map(PatientSearchCacheTest::patient).toList();
+        PatientSearchCache.SearchKey key = searchCache.key("name", searchValue, sortField, sort);
+        searchCache.put(key, 1, 10, PatientSearchCache.toPage(matches, matches.size(), 1, 10), matches);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("patient.search.cache.requests").tag("result", result).counter().count();
+    }
+
+    private static List<String> names(PagedPatientResponseDto page) {
+        return page.getPatients().stream().map(PatientResponseDTO::getName).toList();
+    }
+
+    private static PatientResponseDTO patient(String name) {
+        PatientResponseDTO patient = new PatientResponseDTO();
+        patient.setName(name);
+        return patient;
+    }
+}
@@ -0,0 +1,112 @@
+package com.pm.patientservice.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TwoTierCacheTest {
+    private static final String KEY = "123e4567-e89b-12d3-a456-426614174000";
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Callable<String> loader = () -> "fresh-" + loads.incrementAndGet();
+
+    private StringRedisTemplate redisTemplate;
+    private RedisCache remoteCache;
+    private SimpleMeterRegistry meterRegistry;
+    private CacheStampedeGuard guard;
+    private TwoTierCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any())).thenReturn(1L);
+
+        remoteCache = mock(RedisCache.class);
+        when(remoteCache.getName()).thenReturn("patientById");
+        when(remoteCache.getCacheConfiguration()).thenReturn(RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(Duration.ofMinutes(60))
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(RedisSerializer.java())));
+
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new CacheStampedeGuard("patientById", redisTemplate, Duration.ofSeconds(3),
+                Duration.ofMillis(100), 1.0, meterRegistry);
+        // the refresh runs on the calling thread, so it has happened when get returns
+        cache = new TwoTierCache("patientById", Caffeine.newBuilder().<String, TwoTierCache.CachedValue>build(),
+                remoteCache, mock(CacheInvalidationPublisher.class), guard, Runnable::run, meterRegistry);
+    }
+
+    @Test
+    void testValueCopiedFromRedisIsRefreshedBeforeItExpires() {
+        redisHolds("cached", 1000L);
+        // loads this slow make any known expiry close enough to refresh
+        guard.recordLoad(TimeUnit.DAYS.toNanos(10_000));
+
+        // an L2 hit, read with its TTL
+        assertEquals("cached", cache.get(KEY, loader));
+        assertEquals(0, loads.get());
+
+        // an L1 hit that reloads in the background
+        assertEquals("cached", cache.get(KEY, loader));
+        assertEquals(1, loads.get());
+        verify(remoteCache).put(KEY, "fresh-1");
+        assertEquals(1.0, meterRegistry.get("cache.refresh.early").counter().count());
+        assertEquals("fresh-1", cache.get(KEY, String.class));
+    }
+
+    @Test
+    void testValueWithoutTtlIsNotRefreshed() {
+        redisHolds("cached", -1L);
+        guard.recordLoad(TimeUnit.DAYS.toNanos(10_000));
+
+        assertEquals("cached", cache.get(KEY, loader));
+        assertEquals("cached", cache.get(KEY, loader));
+
+        assertEquals(0, loads.get());
+        verify(remoteCache, never()).put(any(), any());
+    }
+
+    @Test
+    void testLoadedValueIsRefreshedFromItsConfiguredTtl() {
+        redisHolds(null, -2L);
+        guard.recordLoad(TimeUnit.DAYS.toNanos(10_000));
+
+        // a Redis miss loads and writes through
+        assertEquals("fresh-1", cache.get(KEY, loader));
+        // the L1 copy expires with the 60m TTL, and is reloaded ahead of it
+        assertEquals("fresh-1", cache.get(KEY, loader));
+
+        assertEquals(2, loads.get());
+        verify(remoteCache).put(KEY, "fresh-2");
+    }
+
+    // what the pipelined GET and PTTL of the guard return
+    @SuppressWarnings("unchecked")
+    private void redisHolds(String value, Long pttl) {
+        byte[] bytes = value != null ? RedisSerializer.java().serialize(value) : null;
+        when(redisTemplate.executePipelined(any(RedisCallback.class), isNull()))
+                .thenAnswer(invocation -> Arrays.asList(bytes, pttl));
+    }
+}
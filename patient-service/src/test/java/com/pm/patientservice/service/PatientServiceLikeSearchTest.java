@@ -0,0 +1,75 @@
+package com.pm.patientservice.service;
+
+import com.pm.patientservice.bloom.PatientEmailFilter;
+import com.pm.patientservice.cache.CacheBatchOperations;
+import com.pm.patientservice.cache.CacheFillRouting;
+import com.pm.patientservice.cache.CacheGeneration;
+import com.pm.patientservice.cache.PatientSearchCache;
+import com.pm.patientservice.cache.PatientVersionCache;
+import com.pm.patientservice.grpc.BillingServiceGrpcClient;
+import com.pm.patientservice.kafka.PatientEventOutbox;
+import com.pm.patientservice.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PatientServiceLikeSearchTest {
+
+    private PatientRepository patientRepository;
+    private PatientService patientService;
+
+    @BeforeEach
+    void setUp() {
+        patientRepository = mock(PatientRepository.class);
+        PatientSearchCache patientSearchCache = mock(PatientSearchCache.class);
+        // nothing cached and no candidate window, every search reads its page
+        when(patientSearchCache.getMaxCandidates()).thenReturn(0);
+        when(patientRepository.findByNameContainingIgnoreCase(anyString(), any(Pageable.class)))
+                .thenAnswer(invocation -> Page.empty(invocation.getArgument(1)));
+
+        patientService = new PatientService(patientRepository, mock(BillingServiceGrpcClient.class),
+                mock(PatientEventOutbox.class), mock(CacheGeneration.class), patientSearchCache,
+                mock(PatientEmailFilter.class), mock(CacheManager.class), mock(CacheBatchOperations.class),
+                mock(PatientVersionCache.class), new CacheFillRouting(Duration.ZERO));
+        patientService.searchMode = "like";
+    }
+
+    @Test
+    void testRelevanceSortsLikeSearchByDefaultField() {
+        patientService.getPatients(1, 10, "asc", "relevance", "name", "jan");
+
+        assertEquals(Sort.by("name").ascending(), searchedPage().getSort());
+    }
+
+    @Test
+    void testRelevanceKeepsDirectionInLikeSearch() {
+        patientService.getPatients(2, 10, "desc", "Relevance", "name", "jan");
+
+        Pageable pageable = searchedPage();
+        assertEquals(Sort.by("name").descending(), pageable.getSort());
+        assertEquals(1, pageable.getPageNumber());
+    }
+
+    @Test
+    void testOtherSortFieldIsKeptInLikeSearch() {
+        patientService.getPatients(1, 10, "asc", "email", "name", "jan");
+
+        assertEquals(Sort.by("email").ascending(), searchedPage().getSort());
+    }
+
+    private Pageable searchedPage() {
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(patientRepository).findByNameContainingIgnoreCase(eq("jan"), pageable.capture());
+        return pageable.getValue();
+    }
+}
@@ -1,28 +1,45 @@
 package com.pm.patientservice.test;
 
 import com.pm.patientservice.controller.PatientController;
+import com.pm.patientservice.dto.CursorPagedPatientResponseDto;
 import com.pm.patientservice.dto.PagedPatientResponseDto;
 import com.pm.patientservice.dto.PatientRequestDTO;
 import com.pm.patientservice.dto.PatientResponseDTO;
+import com.pm.patientservice.exception.GlobalExceptionHandler;
+import com.pm.patientservice.idempotency.IdempotencyKeyStore;
+import com.pm.patientservice.pagination.PatientCursor;
+import com.pm.patientservice.service.PatientExportService;
+import com.pm.patientservice.service.PatientImportService;
 import com.pm.patientservice.service.PatientService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import java.util.UUID;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 // docker build -t patient-service-image .  ( if this is success means test executed successfully)
 // to run docker run -p 4000:4000 patient-service-image
 class PatientControllerTest {
 
     private PatientService patientService;
+    private IdempotencyKeyStore idempotencyKeyStore;
     private PatientController patientController;
 
     @BeforeEach
     void setUp() {
         patientService = mock(PatientService.class);
-        patientController = new PatientController(patientService);
+        idempotencyKeyStore = mock(IdempotencyKeyStore.class);
+        patientController = new PatientController(patientService, mock(PatientImportService.class),
+                mock(PatientExportService.class), idempotencyKeyStore);
     }
 
     @Test
@@ -32,24 +49,133 @@ class PatientControllerTest {
                 .thenReturn(pagedResponse);
 
         ResponseEntity<PagedPatientResponseDto> response = patientController.getPatients(
-                1, 10, "asc", "name", "name", "");
+                1, 10, "asc", "name", "name", "", null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertSame(pagedResponse, response.getBody());
         verify(patientService).getPatients(1, 10, "asc", "name", "name", "");
     }
 
+    @Test
+    void testGetPatientsByRelevanceWithoutSearchUsesDefaultSort() {
+        PagedPatientResponseDto pagedResponse = PagedPatientResponseDto.builder().build();
+        when(patientService.getPatients(1, 10, "asc", "name", "name", ""))
+                .thenReturn(pagedResponse);
+
+        ResponseEntity<PagedPatientResponseDto> response = patientController.getPatients(
+                1, 10, "asc", "relevance", "name", "", null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(pagedResponse, response.getBody());
+        verify(patientService, never()).getPatients(any(), any(), any(), eq("relevance"), any(), any());
+    }
+
+    @Test
+    void testGetPatientsByRelevanceKeepsRelevanceForSearch() {
+        patientController.getPatients(1, 10, "asc", "relevance", "name", "smi", null);
+
+        verify(patientService).getPatients(1, 10, "asc", "relevance", "name", "smi");
+    }
+
+    @Test
+    void testGetPatientsByCursor() {
+        CursorPagedPatientResponseDto pagedResponse = CursorPagedPatientResponseDto.builder().build();
+        when(patientService.getPatientsAfter("", 10, "asc", "name", false))
+                .thenReturn(pagedResponse);
+
+        ResponseEntity<CursorPagedPatientResponseDto> response = patientController.getPatientsByCursor(
+                "", 10, "asc", "name", false, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(pagedResponse, response.getBody());
+        verify(patientService).getPatientsAfter("", 10, "asc", "name", false);
+    }
+
+    @Test
+    void testGetPatientsByCursorRejectsInvalidCursor() throws Exception {
+        // the service decodes the cursor, let the mock do the same
+        when(patientService.getPatientsAfter(anyString(), anyInt(), anyString(), anyString(), anyBoolean()))
+                .thenAnswer(invocation -> {
+                    PatientCursor.decode(invocation.getArgument(0));
+                    return CursorPagedPatientResponseDto.builder().build();
+                });
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(patientController)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        mockMvc.perform(get("/patients").param("cursor", "bm90IGEgY3Vyc29y"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid cursor"));
+        mockMvc.perform(get("/patients").param("cursor", "%%%"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid cursor"));
+    }
+
+    @Test
+    void testGetPatientsNotModified() {
+        when(patientService.getPatientsVersion()).thenReturn(7L);
+
+        ResponseEntity<PagedPatientResponseDto> response = patientController.getPatients(
+                1, 10, "asc", "name", "name", "", "W/\"g7\"");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(patientService, never()).getPatients(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testGetPatientById() {
+        UUID id = UUID.randomUUID();
+        PatientResponseDTO responseDTO = new PatientResponseDTO();
+        responseDTO.setVersion(3L);
+        when(patientService.getPatientById(id)).thenReturn(responseDTO);
+
+        ResponseEntity<PatientResponseDTO> response = patientController.getPatientById(id, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("W/\"3\"", response.getHeaders().getETag());
+        assertSame(responseDTO, response.getBody());
+    }
+
+    @Test
+    void testGetPatientByIdNotModifiedFromCachedVersion() {
+        UUID id = UUID.randomUUID();
+        when(patientService.getCachedPatientVersion(id)).thenReturn(3L);
+
+        ResponseEntity<PatientResponseDTO> response = patientController.getPatientById(id, "W/\"3\"");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(patientService, never()).getPatientById(id);
+    }
+
     @Test
     void testCreatePatient() {
         PatientRequestDTO requestDTO = new PatientRequestDTO();
         PatientResponseDTO responseDTO = new PatientResponseDTO();
         when(patientService.createPatient(requestDTO)).thenReturn(responseDTO);
 
-        ResponseEntity<PatientResponseDTO> response = patientController.createPatient(requestDTO);
+        ResponseEntity<PatientResponseDTO> response = patientController.createPatient(requestDTO, null);
 
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
         assertSame(responseDTO, response.getBody());
         verify(patientService).createPatient(requestDTO);
+        verifyNoInteractions(idempotencyKeyStore);
+    }
+
+    @Test
+    void testCreatePatientReplayedForIdempotencyKey() {
+        PatientRequestDTO requestDTO = new PatientRequestDTO();
+        PatientResponseDTO responseDTO = new PatientResponseDTO();
+        when(idempotencyKeyStore.createOnce(eq("key-1"), same(requestDTO), any()))
+                .thenReturn(new IdempotencyKeyStore.Outcome(responseDTO, true));
+
+        ResponseEntity<PatientResponseDTO> response = patientController.createPatient(requestDTO, "key-1");
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals("true", response.getHeaders().getFirst("Idempotent-Replayed"));
+        assertSame(responseDTO, response.getBody());
+        verify(patientService, never()).createPatient(requestDTO);
     }
 
     @Test
@@ -66,6 +192,25 @@ class PatientControllerTest {
         verify(patientService).updatePatient(id, requestDTO);
     }
 
+    @Test
+    void testUpdatePatientConflictsWithConcurrentUpdate() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(patientService.updatePatient(eq(id), any(PatientRequestDTO.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException("com.pm.patientservice.model.Patient", id));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(patientController)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        mockMvc.perform(put("/patients/{id}", id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"name": "Jane Doe", "email": "jane.doe@example.com",
+                                 "address": "456 Main St", "dateOfBirth": "1992-05-10"}
+                                """))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.error").value("Patient was modified concurrently, reload it and retry"));
+    }
+
     @Test
     void testDeletePatient() {
         UUID id = UUID.randomUUID();
@@ -0,0 +1,73 @@
+package com.pm.patientservice.test;
+
+import com.pm.patientservice.pagination.PatientCursor;
+import com.pm.patientservice.pagination.PatientSortField;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatientCursorTest {
+
+    @Test
+    void testRoundTripKeepsEveryField() {
+        UUID id = UUID.randomUUID();
+        PatientCursor cursor = new PatientCursor(PatientSortField.NAME, Sort.Direction.DESC, "O'Brien | Jr.", id);
+
+        assertEquals(cursor, PatientCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void testRoundTripParsesTypedValues() {
+        UUID id = UUID.randomUUID();
+        PatientCursor byDate = new PatientCursor(PatientSortField.DATE_OF_BIRTH, Sort.Direction.ASC,
+                LocalDate.of(1990, 2, 28), id);
+        PatientCursor byTimestamp = new PatientCursor(PatientSortField.REGISTERED_DATE, Sort.Direction.ASC,
+                LocalDateTime.of(2024, 5, 1, 13, 45, 7), id);
+
+        assertEquals(byDate, PatientCursor.decode(byDate.encode()));
+        assertEquals(byTimestamp, PatientCursor.decode(byTimestamp.encode()));
+    }
+
+    @Test
+    void testEncodedCursorIsUrlSafe() {
+        PatientCursor cursor = new PatientCursor(PatientSortField.ADDRESS, Sort.Direction.ASC,
+                "??>>~~ street", UUID.randomUUID());
+
+        assertTrue(cursor.encode().matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void testMalformedCursorIsRejected() {
+        assertInvalid("not a cursor!");
+        assertInvalid("");
+        assertInvalid(encode("name|ASC|" + UUID.randomUUID()));
+    }
+
+    @Test
+    void testTamperedCursorIsRejected() {
+        UUID id = UUID.randomUUID();
+        assertInvalid(encode("password|ASC|" + id + "|x"));
+        assertInvalid(encode("name|SIDEWAYS|" + id + "|x"));
+        assertInvalid(encode("name|ASC|not-a-uuid|x"));
+        assertInvalid(encode("dateOfBirth|ASC|" + id + "|1990-02-30' OR 1=1"));
+
+        String token = new PatientCursor(PatientSortField.NAME, Sort.Direction.ASC, "x", id).encode();
+        assertInvalid(token.substring(0, token.length() / 2));
+    }
+
+    private static void assertInvalid(String token) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> PatientCursor.decode(token));
+        assertEquals("Invalid cursor", e.getMessage());
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
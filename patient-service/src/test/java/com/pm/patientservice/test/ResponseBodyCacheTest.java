@@ -0,0 +1,92 @@
+package com.pm.patientservice.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pm.patientservice.cache.ResponseBodyCache;
+import com.pm.patientservice.config.MeasuredJackson2HttpMessageConverter;
+import com.pm.patientservice.config.ResponseSerializationMetrics;
+import com.pm.patientservice.dto.PatientResponseDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseBodyCacheTest {
+    private static final String ID = "123e4567-e89b-12d3-a456-426614174000";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testHitWritesTheSameBytes() throws Exception {
+        MeasuredJackson2HttpMessageConverter converter = converter(true);
+        PatientResponseDTO patient = patient("Jane Doe", 1L);
+
+        MockHttpOutputMessage first = write(converter, patient);
+        MockHttpOutputMessage second = write(converter, patient);
+
+        assertArrayEquals(first.getBodyAsBytes(), second.getBodyAsBytes());
+        assertEquals(first.getHeaders().getContentLength(), second.getHeaders().getContentLength());
+        assertEquals(1.0, lookups("hit").count());
+        assertEquals(1.0, lookups("miss").count());
+    }
+
+    @Test
+    void testReplacedResponseGetsANewBody() throws Exception {
+        MeasuredJackson2HttpMessageConverter converter = converter(true);
+        write(converter, patient("Jane Doe", 1L));
+
+        // an update caches a new instance, the body stored for the old one isn't used
+        MockHttpOutputMessage updated = write(converter, patient("Jane Smith", 2L));
+
+        String body = updated.getBodyAsString(StandardCharsets.UTF_8);
+        assertTrue(body.contains("\"name\":\"Jane Smith\""));
+        assertTrue(body.contains("\"version\":2"));
+        assertEquals(updated.getBodyAsBytes().length, updated.getHeaders().getContentLength());
+        assertEquals(2.0, lookups("miss").count());
+        assertNull(meterRegistry.find("http.response.body.cache").tag("result", "hit").counter());
+    }
+
+    @Test
+    void testDisabledModeSerializesEveryTime() throws Exception {
+        MeasuredJackson2HttpMessageConverter converter = converter(false);
+        PatientResponseDTO patient = patient("Jane Doe", 1L);
+
+        MockHttpOutputMessage first = write(converter, patient);
+        MockHttpOutputMessage second = write(converter, patient);
+
+        assertArrayEquals(first.getBodyAsBytes(), second.getBodyAsBytes());
+        assertNull(meterRegistry.find("http.response.body.cache").counter());
+    }
+
+    private MeasuredJackson2HttpMessageConverter converter(boolean enabled) {
+        ResponseBodyCache responseBodyCache = new ResponseBodyCache(enabled, 1024 * 1024, 4, 64 * 1024, meterRegistry);
+        return new MeasuredJackson2HttpMessageConverter(new ObjectMapper(),
+                new ResponseSerializationMetrics(meterRegistry), responseBodyCache);
+    }
+
+    private static MockHttpOutputMessage write(MeasuredJackson2HttpMessageConverter converter,
+                                               PatientResponseDTO patient) throws Exception {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+        converter.write(patient, MediaType.APPLICATION_JSON, outputMessage);
+        return outputMessage;
+    }
+
+    private Counter lookups(String result) {
+        return meterRegistry.get("http.response.body.cache").tag("format", "json").tag("result", result).counter();
+    }
+
+    private static PatientResponseDTO patient(String name, Long version) {
+        PatientResponseDTO patient = new PatientResponseDTO();
+        patient.setId(ID);
+        patient.setName(name);
+        patient.setEmail("jane.doe@example.com");
+        patient.setAddress("456 Main St");
+        patient.setDateOfBirth("1992-05-10");
+        patient.setVersion(version);
+        return patient;
+    }
+}